@@ -0,0 +1,202 @@
+package main;
+
+import nodes.interfaces.ProgramNode;
+import util.exepeptions.ParserFailureException;
+import util.exepeptions.RobotInterruptedException;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Phaser;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks for the hot paths of the game, reporting throughput and heap allocation per operation.
+ * <ul>
+ *   <li>parse: {@link Parser#parse(CharSequence)} on each program in the program directory</li>
+ *   <li>execute: {@link ProgramNode#execute} of each program against a fresh {@link TesterRobot},
+ *   which stops the program after 20 actions</li>
+ *   <li>turns: committed turns of two-robot lock-step games, as driven by {@link MatchEngine}</li>
+ * </ul>
+ * Each benchmark is warmed up and then run for a fixed time. Allocation is measured with the
+ * per-thread allocation counters of the HotSpot ThreadMXBean, summed over every thread taking
+ * part, and is reported as n/a on JVMs without them.
+ * <p>
+ * Usage: Benchmarks [filter] [seconds]
+ */
+public class Benchmarks {
+
+    private static final long WARMUP_NANOS = 1_000_000_000L;
+    private static final int TURN_GAMES_SEED = 42;
+
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    private final long measureNanos;
+
+    private Benchmarks(long measureNanos) {
+        this.measureNanos = measureNanos;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String filter = (args.length > 0) ? args[0] : "";
+        double seconds = (args.length > 1) ? Double.parseDouble(args[1]) : 2;
+        Benchmarks benchmarks = new Benchmarks((long) (seconds * 1e9));
+
+        Parser parser = new Parser();
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(Path.of(RoboGame.CODE_DIRECTORY))) {
+            files = listing.filter(f -> f.toString().endsWith(".prog")).sorted().toList();
+        }
+        List<String> names = new ArrayList<>();
+        List<String> sources = new ArrayList<>();
+        List<ProgramNode> programs = new ArrayList<>();
+        for (Path file : files) {
+            String source = Files.readString(file);
+            try {
+                programs.add(parser.parse(source));
+                names.add(file.getFileName().toString());
+                sources.add(source);
+            } catch (ParserFailureException e) {
+                // the bad examples are there to be rejected, not benchmarked
+            }
+        }
+
+        DebugLog.setLevel(DebugLog.Level.OFF); // the robots would log every action
+        PrintStream out = System.out;
+        out.printf("%-32s %14s %12s %12s%n", "Benchmark", "ops/s", "ns/op", "B/op");
+        for (int i = 0; i < names.size(); i++) {
+            String source = sources.get(i);
+            benchmarks.run(out, filter, "parse " + names.get(i), () -> {
+                parser.parse(source);
+                return 1;
+            });
+        }
+        for (int i = 0; i < names.size(); i++) {
+            ProgramNode program = programs.get(i);
+            benchmarks.run(out, filter, "execute " + names.get(i), () -> {
+                try {
+                    program.execute(new TesterRobot());
+                } catch (RobotInterruptedException e) {
+                }
+                return 1;
+            });
+        }
+        ProgramNode red = parser.parse(Files.readString(Path.of(RoboGame.CODE_DIRECTORY, "s1_full.prog")));
+        ProgramNode blue = parser.parse(Files.readString(Path.of(RoboGame.CODE_DIRECTORY, "s2_simple.prog")));
+        long[] seed = {TURN_GAMES_SEED};
+        benchmarks.run(out, filter, "turns s1_full vs s2_simple", () -> playTurns(red, blue, seed[0]++));
+    }
+
+    /**
+     * Runs the operation in batches until the measuring time is over, after a warm up.
+     *
+     * @param op performs some operations and returns how many it performed
+     */
+    private void run(PrintStream out, String filter, String name, LongSupplier op) {
+        if (!name.contains(filter)) return;
+        long end = System.nanoTime() + WARMUP_NANOS;
+        while (System.nanoTime() < end) {
+            op.getAsLong();
+        }
+
+        long ops = 0;
+        turnThreadBytes = 0;
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        end = start + measureNanos;
+        long now;
+        do {
+            ops += op.getAsLong();
+            now = System.nanoTime();
+        } while (now < end);
+        long allocated = allocatedBytes() - allocatedBefore + turnThreadBytes;
+
+        double nanosPerOp = (now - start) / (double) ops;
+        String bytesPerOp = (THREADS == null) ? "n/a" : String.format("%.0f", allocated / (double) ops);
+        out.printf("%-32s %14.0f %12.1f %12s%n", name, 1e9 / nanosPerOp, nanosPerOp, bytesPerOp);
+    }
+
+    //----------------------------------------------------------------//
+    //                          WORLD TURNS                           //
+    //----------------------------------------------------------------//
+
+    private static long turnThreadBytes; // allocated by robot threads during the current measurement
+
+    /**
+     * Plays one game in lock step, with the same protocol as {@link MatchEngine#run()}, and
+     * adds the allocation of the robot threads while the game ran. A robot whose program
+     * ended before the game did is no longer counted.
+     *
+     * @return the number of turns committed
+     */
+    private static long playTurns(ProgramNode red, ProgramNode blue, long seed) {
+        World world = new World(new FuelSchedule(seed, MatchEngine.DEFAULT_MAX_TURNS));
+        world.getRobot(1).setProgram(red);
+        world.getRobot(2).setProgram(blue);
+        Phaser phaser = new Phaser(1);
+        Thread[] threads = world.startLockStep(phaser);
+        long[] before = allocatedBytes(threads);
+        int turns = 0;
+        try {
+            while (turns < MatchEngine.DEFAULT_MAX_TURNS) {
+                phaser.arriveAndAwaitAdvance();
+                world.resolveActions();
+                if (world.getRobot(1).checkOutOfFuel() | world.getRobot(2).checkOutOfFuel()) break;
+                world.updateWorld();
+                turns++;
+                if (world.getRobot(1).checkOutOfFuel() | world.getRobot(2).checkOutOfFuel()) break;
+                phaser.arriveAndAwaitAdvance();
+            }
+            long[] after = allocatedBytes(threads);
+            for (int i = 0; i < threads.length; i++) {
+                if (before[i] >= 0 && after[i] >= 0) turnThreadBytes += after[i] - before[i];
+            }
+        } finally {
+            world.reset();
+            phaser.forceTermination();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return turns;
+    }
+
+    //----------------------------------------------------------------//
+    //                          ALLOCATION                            //
+    //----------------------------------------------------------------//
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean && bean.isThreadAllocatedMemorySupported()) {
+            bean.setThreadAllocatedMemoryEnabled(true);
+            return bean;
+        }
+        return null;
+    }
+
+    /**
+     * @return the bytes allocated so far by the current thread
+     */
+    private static long allocatedBytes() {
+        return (THREADS == null) ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * @return the bytes allocated so far by each of the threads, -1 for a thread that has ended
+     */
+    private static long[] allocatedBytes(Thread[] threads) {
+        long[] bytes = new long[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            bytes[i] = (THREADS == null) ? -1 : THREADS.getThreadAllocatedBytes(threads[i].getId());
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,157 @@
+package main;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Debug output of the robots: what each robot does and senses.
+ * <p>
+ * Robots log structured events (a robot, an event kind and up to two ints) rather than
+ * strings. An event is only logged if {@link RoboGame#debugDisplay} is on and its level is
+ * enabled; otherwise {@link #log} returns after two field reads, without allocating. Logged
+ * events go into a lock-free ring buffer that a background thread drains, formats and
+ * prints, so robot threads never wait on the console. If the writer falls behind by a
+ * whole buffer, further events are dropped and the number dropped is reported.
+ */
+public final class DebugLog {
+
+    /**
+     * Levels of detail, from least to most verbose.
+     */
+    public enum Level {OFF, ACTIONS, SENSORS}
+
+    // Events, logged at ACTIONS level
+    public static final int MOVE = 1, TURN_L = 2, TURN_R = 3, TURN_AROUND = 4, SHIELD = 5, TAKE_FUEL = 6, WAIT = 7, SIPHON = 8;
+    // Events, logged at SENSORS level
+    public static final int FUEL_LEFT = 9, OPP_LR = 10, OPP_FB = 11, NUM_BARRELS = 12, BARREL_LR = 13, BARREL_FB = 14, SHIELD_STATE = 15;
+
+    private static final String[] ROBOTS = {"", "red", "blue"};
+    private static final int CAPACITY = 1 << 14;   // events, a power of two
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+
+    private static volatile Level level = Level.SENSORS;
+
+    // Ring buffer: each event takes two slots, published by writing its sequence number + 1
+    private static final AtomicLongArray events = new AtomicLongArray(2 * CAPACITY);
+    private static final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+    private static final AtomicLong head = new AtomicLong(); // next sequence number to claim
+    private static volatile long tail;                       // next sequence number to print
+    private static final AtomicLong dropped = new AtomicLong();
+    private static volatile Thread writer;
+
+    private DebugLog() {
+    }
+
+    public static Level getLevel() {
+        return level;
+    }
+
+    public static void setLevel(Level level) {
+        DebugLog.level = level;
+    }
+
+    /**
+     * @return whether events of the given kind are currently logged
+     */
+    public static boolean isEnabled(int event) {
+        return RoboGame.debugDisplay && level.ordinal() >= levelOf(event).ordinal();
+    }
+
+    /**
+     * Logs an event, if enabled.
+     *
+     * @param robot 1 for red, 2 for blue
+     * @param event one of the event constants
+     * @param a     the sensor value, shield state or fuel siphoned; unused by plain actions
+     * @param b     the barrel index for BARREL_LR and BARREL_FB
+     */
+    public static void log(int robot, int event, int a, int b) {
+        if (!isEnabled(event)) return;
+        long sequence;
+        do {
+            sequence = head.get();
+            if (sequence - tail >= CAPACITY) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!head.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) (sequence & (CAPACITY - 1));
+        events.setPlain(2 * slot, ((long) robot << 32) | event);
+        events.setPlain(2 * slot + 1, ((long) a << 32) | (b & 0xFFFFFFFFL));
+        published.setRelease(slot, sequence + 1);
+        if (writer == null) startWriter();
+    }
+
+    /**
+     * Prints every event published so far, on the calling thread.
+     */
+    public static void flush() {
+        drain(System.out);
+        System.out.flush();
+    }
+
+    private static synchronized void startWriter() {
+        if (writer != null) return;
+        writer = new Thread(() -> {
+            while (true) {
+                if (drain(System.out) == 0) LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }, "debug-log");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(DebugLog::flush, "debug-log-flush"));
+    }
+
+    /**
+     * @return the number of events printed
+     */
+    private static synchronized int drain(PrintStream out) {
+        int printed = 0;
+        long next = tail;
+        while (true) {
+            int slot = (int) (next & (CAPACITY - 1));
+            if (published.getAcquire(slot) != next + 1) break;
+            long first = events.getPlain(2 * slot);
+            long second = events.getPlain(2 * slot + 1);
+            next++;
+            tail = next; // frees the slot for producers
+            out.println(ROBOTS[(int) (first >>> 32)] + " robot: " + format((int) first, (int) (second >> 32), (int) second));
+            printed++;
+        }
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) out.println("debug: " + lost + " events dropped");
+        return printed;
+    }
+
+    private static Level levelOf(int event) {
+        return (event <= SIPHON) ? Level.ACTIONS : Level.SENSORS;
+    }
+
+    private static String format(int event, int a, int b) {
+        return switch (event) {
+            case MOVE -> "move";
+            case TURN_L -> "turnL";
+            case TURN_R -> "turnR";
+            case TURN_AROUND -> "turnAround";
+            case SHIELD -> "shield " + ((a != 0) ? "on" : "off");
+            case TAKE_FUEL -> "takeFuel";
+            case WAIT -> "wait";
+            case SIPHON -> "taking " + a + " fuel";
+            case FUEL_LEFT -> "fuel=" + a;
+            case OPP_LR -> "oppLR=" + value(a);
+            case OPP_FB -> "oppFB=" + value(a);
+            case NUM_BARRELS -> "numBarrels = " + a;
+            case BARREL_LR -> ((b == 0) ? "" : (b + "th")) + "closestBarrelLR = " + value(a);
+            case BARREL_FB -> ((b == 0) ? "" : (b + "th")) + "closestBarrelFB = " + value(a);
+            case SHIELD_STATE -> (a != 0) ? "shield is on" : "shield is off";
+            default -> "event " + event;
+        };
+    }
+
+    private static String value(int value) {
+        return (value == Robot.INFINITY) ? "INFINITY" : String.valueOf(value);
+    }
+}
@@ -1,6 +1,12 @@
 package main;
 
+import nodes.compiler.ProgramCompiler;
 import nodes.interfaces.ProgramNode;
+import nodes.interpreter.StepInterpreter;
+import nodes.optimizer.ProgramOptimizer;
+import nodes.serializer.ProgramSerializer;
+import nodes.vm.BytecodeProgram;
+import nodes.vm.VmState;
 import util.exepeptions.ParserFailureException;
 import util.exepeptions.RobotInterruptedException;
 
@@ -51,13 +57,33 @@ public class ExecuteTester {
         }
     };
 
+    // Programs that fail part way, with the actions taken before: the stepped runs end the program there
+    private static final String[][] failing = new String[][]{
+        {"$z = 0; wait; move(div(10, $z)); turnL;", "wait"},
+        {"move; while (gt(fuelLeft, 0)) { $a = div(fuelLeft, 0); turnL; }", "move getFuelLeft getFuelLeft"}
+    };
+
     /**
      * For testing the execute() methods from your parser without requiring the world or the game:
      * Calling main with no arguments will ask the user to select a stage
      * and will then test programs for that stage
+     * <p>
+     * Calling main with "-compiled" runs each program through the ProgramCompiler backend instead,
+     * and with "-optimized" through the ProgramOptimizer first. Both can be given.
+     * Calling main with "-stepped" runs each program in the StepInterpreter instead of execute(),
+     * and then the programs that fail part way, which must end where they fail.
+     * Calling main with "-serialized" runs each program as read back from the ProgramSerializer.
+     * Calling main with "-vm" runs each program lowered to a BytecodeProgram; with "-stepped" as
+     * well, it is run action by action, from a copy of the state after every action.
      */
 
     public static void main(String[] args) {
+        List<String> options = List.of(args);
+        boolean compiled = options.contains("-compiled");
+        boolean optimized = options.contains("-optimized");
+        boolean stepped = options.contains("-stepped");
+        boolean serialized = options.contains("-serialized");
+        boolean vm = options.contains("-vm");
         Parser parser = new Parser();
         System.out.println("Testing execute methods");
         System.out.println("================================================================");
@@ -77,7 +103,17 @@ public class ExecuteTester {
                         System.out.println("&& BAD: Parsing " + test[0] + "\n&&  reported no errors, but produced a null program");
                         continue;
                     }
-                    testProgram(test[0], node, test[1]);
+                    if (optimized) node = ProgramOptimizer.optimize(node);
+                    if (serialized) node = ProgramSerializer.deserialize(ProgramSerializer.serialize(node));
+                    if (compiled) node = ProgramCompiler.compile(node);
+                    if (vm) node = BytecodeProgram.lower(node);
+                    if (stepped && node instanceof BytecodeProgram bytecode) {
+                        testVm(test[0], bytecode, test[1]);
+                    } else if (stepped) {
+                        testStepped(test[0], node, test[1]);
+                    } else {
+                        testProgram(test[0], node, test[1]);
+                    }
                 } catch (ParserFailureException e) {
                     System.out.println("&& BAD: Parsing failed (reporting errors) on " + test[0]);
                     System.out.println("       " + e);
@@ -87,6 +123,24 @@ public class ExecuteTester {
                 }
             }
         }
+
+        if (!stepped) return; // a failing program ends its robot's thread
+        System.out.println("\n&& Testing programs that fail:");
+        for (String[] test : failing) {
+            try {
+                ProgramNode node = parser.parse(new Scanner(test[0]));
+                if (optimized) node = ProgramOptimizer.optimize(node);
+                if (serialized) node = ProgramSerializer.deserialize(ProgramSerializer.serialize(node));
+                if (vm) {
+                    testVm(test[0], BytecodeProgram.lower(node), test[1]);
+                } else {
+                    testStepped(test[0], node, test[1]);
+                }
+            } catch (Exception e) {
+                System.out.println("&& BAD: A failing program was not ended: " + test[0]);
+                e.printStackTrace(System.out);
+            }
+        }
     }
 
     /**
@@ -101,6 +155,38 @@ public class ExecuteTester {
         compare(robot.getOutput(), expected, program);
     }
 
+    /**
+     * Tests the parser on a single program, run action by action in the StepInterpreter
+     */
+    static void testStepped(String program, ProgramNode ast, String expected) {
+        TesterRobot robot = new TesterRobot();
+        StepInterpreter interpreter = new StepInterpreter(ast, robot);
+        int stalls = 0;
+        int result;
+        do {
+            result = interpreter.step(SteppedMatch.DEFAULT_BUDGET);
+            if (result == StepInterpreter.STALLED) stalls++;
+        } while (result != StepInterpreter.FINISHED && stalls < 100);
+        compare(robot.getOutput(), expected, program);
+    }
+
+    /**
+     * Tests the parser on a single program, run action by action in the bytecode VM, going on
+     * from a copy of the state after each action
+     */
+    static void testVm(String program, BytecodeProgram bytecode, String expected) {
+        TesterRobot robot = new TesterRobot();
+        VmState state = bytecode.start();
+        int stalls = 0;
+        int result;
+        do {
+            result = bytecode.run(state, robot, SteppedMatch.DEFAULT_BUDGET);
+            if (result == BytecodeProgram.STALLED) stalls++;
+            state = state.copy();
+        } while (result != BytecodeProgram.FINISHED && stalls < 100);
+        compare(robot.getOutput(), expected, program);
+    }
+
     static void compare(List<String> actual, String expected, String program) {
         String[] expectedArray = expected.split(" ");
         boolean match = actual.size() == expectedArray.length;
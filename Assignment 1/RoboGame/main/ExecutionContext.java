@@ -0,0 +1,56 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * The state of one run of a program that is not part of the program itself: the values
+ * of its variables.
+ * <p>
+ * The parser resolves every variable name to a slot, an index into this context, so a
+ * read or write is a plain array access. Each robot carries its own context and the
+ * parsed tree holds none, so one tree can be run by any number of robots at once.
+ * A variable that has not been assigned yet is 0.
+ */
+public final class ExecutionContext {
+
+    private int[] values;
+
+    public ExecutionContext() {
+        this(0);
+    }
+
+    public ExecutionContext(int slots) {
+        values = new int[slots];
+    }
+
+    /**
+     * @return the value of the variable in the slot
+     */
+    public int get(int slot) {
+        int[] v = values;
+        return (slot < v.length) ? v[slot] : 0;
+    }
+
+    /**
+     * Sets the variable in the slot, growing the context if the slot is beyond it.
+     */
+    public void set(int slot, int value) {
+        if (slot >= values.length) values = Arrays.copyOf(values, Math.max(slot + 1, 2 * values.length));
+        values[slot] = value;
+    }
+
+    /**
+     * Sets every variable back to 0, for a new run of a program with the given number of slots.
+     *
+     * @return the slots themselves, at least the given number, for code that reads and writes
+     * them directly; valid until a set beyond them grows the context
+     */
+    public int[] reset(int slots) {
+        if (values.length < slots) {
+            values = new int[slots];
+        } else {
+            Arrays.fill(values, 0);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,47 @@
+package main;
+
+import java.util.Random;
+
+/**
+ * The complete sequence of fuel barrel spawns for a game, generated up front from a seed.
+ * <p>
+ * Spawn 0 and 1 are the two barrels placed when the world starts, spawn n + 2 is the
+ * chance of a barrel in the n-th world update. The draws from the Random are made in the
+ * same order as {@link World#World(long)} makes them, so a world using this schedule
+ * places exactly the same barrels as a world seeded with the same seed, without calling
+ * the Random or allocating during the game.
+ */
+public class FuelSchedule {
+
+    public static final double SPAWN_CHANCE = 0.2; // chance of a new barrel in each world update
+    public static final int NONE = -1;             // no barrel spawns
+
+    private final int[] cells; // y * World.SIZE + x of each spawn, or NONE
+
+    /**
+     * @param seed  the seed of the fuel placement
+     * @param turns the number of world updates to plan for; later updates spawn no fuel
+     */
+    public FuelSchedule(long seed, int turns) {
+        Random rand = new Random(seed);
+        cells = new int[turns + 2];
+        for (int i = 0; i < cells.length; i++) {
+            boolean definitely = i < 2;
+            if (definitely || rand.nextDouble() < SPAWN_CHANCE) {
+                int x = rand.nextInt(World.SIZE);
+                int y = rand.nextInt(World.SIZE);
+                cells[i] = y * World.SIZE + x;
+            } else {
+                cells[i] = NONE;
+            }
+        }
+    }
+
+    /**
+     * @param spawn the index of the spawn, see the class comment
+     * @return the cell (y * World.SIZE + x) of the barrel, or NONE
+     */
+    public int getCell(int spawn) {
+        return (spawn < cells.length) ? cells[spawn] : NONE;
+    }
+}
@@ -0,0 +1,272 @@
+package main;
+
+import nodes.interfaces.ProgramNode;
+import util.exepeptions.ParserFailureException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Keeps a program parsed while it is edited, re-parsing only the statements an edit touched.
+ * <p>
+ * Every statement that parsed without errors, at any depth, is remembered with the text it
+ * was parsed from: its own tokens and the token after it, which decides whether an if goes
+ * on with an elif or else. After an edit the program is parsed again with error recovery, see
+ * {@link Parser#parse(CharSequence, List)}, but a statement whose text lies wholly before or
+ * after the edit is taken from the previous parse, nested statements and all, and the lexer
+ * skips over it. So an edit inside a loop re-parses the loop and the edited statement, and
+ * only looks up the other statements of the loop's block.
+ * <p>
+ * Errors are found anew by every parse, as statements with errors are never reused. Nodes
+ * are never changed, so a program returned earlier can still be run while editing goes on.
+ * Not thread safe.
+ * <p>
+ * Usage: IncrementalParser program [edits], to time single-character edits of the program
+ * against parsing it from scratch.
+ */
+public class IncrementalParser {
+
+    private final Parser parser = new Parser();
+    private char[] text = new char[0];
+    private int length;
+
+    private ProgramNode program;
+    private List<ParserFailureException> errors = List.of();
+    private int reused;
+
+    // The statements of the last parse that can be reused, by start offset, at every depth
+    private Map<Integer, Statement> statements = new HashMap<>();
+
+    // While parsing: the statements of the previous parse, the edit since then, and the
+    // statements parsed or reused whose enclosing statement is still being parsed
+    private Map<Integer, Statement> previous = Map.of();
+    private int editStart, editEnd, insertedEnd; // editEnd is an offset into the previous text
+    private final List<Statement> finished = new ArrayList<>();
+
+    public IncrementalParser() {
+        setText("");
+    }
+
+    public IncrementalParser(CharSequence source) {
+        setText(source);
+    }
+
+    /**
+     * Replaces the whole text and parses it from scratch.
+     *
+     * @return the program, see {@link #getProgram()}
+     */
+    public ProgramNode setText(CharSequence source) {
+        length = source.length();
+        text = new char[Math.max(16, length)];
+        source.toString().getChars(0, length, text, 0);
+        statements = new HashMap<>();
+        return parse();
+    }
+
+    /**
+     * Replaces part of the text and parses it again, reusing the statements the edit did not touch.
+     *
+     * @param offset   where the edit starts
+     * @param removed  the number of characters removed from the offset
+     * @param inserted the text inserted at the offset
+     * @return the program, see {@link #getProgram()}
+     */
+    public ProgramNode edit(int offset, int removed, CharSequence inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > length) {
+            throw new IndexOutOfBoundsException("Edit of " + removed + " at " + offset + " in text of length " + length);
+        }
+        int added = inserted.length();
+        int newLength = length - removed + added;
+        if (newLength > text.length) {
+            char[] grown = new char[Math.max(newLength, 2 * text.length)];
+            System.arraycopy(text, 0, grown, 0, offset);
+            System.arraycopy(text, offset + removed, grown, offset + added, length - offset - removed);
+            text = grown;
+        } else {
+            System.arraycopy(text, offset + removed, text, offset + added, length - offset - removed);
+        }
+        inserted.toString().getChars(0, added, text, offset);
+        length = newLength;
+
+        editStart = offset;
+        editEnd = offset + removed;
+        insertedEnd = offset + added;
+        return parse();
+    }
+
+    private ProgramNode parse() {
+        previous = statements;
+        statements = new HashMap<>(Math.max(16, 2 * previous.size()));
+        finished.clear();
+        reused = 0;
+        List<ParserFailureException> found = new ArrayList<>();
+        try {
+            program = parser.parse(new Lexer(text, length), found, this);
+        } catch (StackOverflowError e) {
+            program = null;
+            statements.clear();
+            found.add(new ParserFailureException("Program is nested too deeply"));
+        } finally {
+            previous = Map.of();
+            finished.clear();
+        }
+        errors = found;
+        return program;
+    }
+
+    /**
+     * @return the program as of the last edit, which is only meant to be run if there are no
+     * errors. Statements that failed to parse are left out.
+     */
+    public ProgramNode getProgram() {
+        return program;
+    }
+
+    /**
+     * @return every syntax error in the text, in the order of the source
+     */
+    public List<ParserFailureException> getErrors() {
+        return errors;
+    }
+
+    public String getText() {
+        return new String(text, 0, length);
+    }
+
+    /**
+     * @return the number of statements, at any depth, the last parse took from the one before
+     */
+    public int getReused() {
+        return reused;
+    }
+
+    //----------------------------------------------------------------//
+    //                   CALLED BY THE PARSER                         //
+    //----------------------------------------------------------------//
+
+    /**
+     * Takes the statement at the current token from the previous parse if its text is
+     * unchanged, and moves the lexer past it.
+     *
+     * @return the statement, or null if it has to be parsed
+     */
+    ProgramNode reuse(Lexer s) {
+        int start = s.start();
+        boolean before = start < editStart;
+        if (!before && start < insertedEnd) return null; // starts in the inserted text
+        int shift = before ? 0 : insertedEnd - editEnd;
+        Statement statement = previous.get(start - shift);
+        if (statement == null) return null;
+        // the edit must not touch the statement, the token after it, or the character before it
+        if (before ? statement.limit >= editStart : statement.start <= editEnd) return null;
+
+        if (shift != 0) statement = statement.shift(shift);
+        keep(statement);
+        finished.add(statement);
+        s.skipTo(statement.next);
+        return statement.node;
+    }
+
+    private void keep(Statement statement) {
+        statements.put(statement.start, statement);
+        reused++;
+        for (Statement child : statement.children) keep(child);
+    }
+
+    /**
+     * @return a mark to pass to {@link #parsed} once the statement starting now is parsed
+     */
+    int mark() {
+        return finished.size();
+    }
+
+    /**
+     * Remembers a statement that parsed without errors, with the statements in it finished since the mark.
+     *
+     * @param s the lexer, at the token after the statement
+     */
+    void parsed(int start, Lexer s, ProgramNode node, int mark) {
+        List<Statement> inner = finished.subList(mark, finished.size());
+        Statement statement = new Statement(start, s.start(), s.end(), node, List.copyOf(inner));
+        inner.clear();
+        statements.put(start, statement);
+        finished.add(statement);
+    }
+
+    /**
+     * A statement of a parse.
+     *
+     * @param start    the offset of its first token
+     * @param next     the offset of the token after it
+     * @param limit    the offset just past the token after it
+     * @param children the statements within it
+     */
+    private record Statement(int start, int next, int limit, ProgramNode node, List<Statement> children) {
+
+        Statement shift(int by) {
+            List<Statement> shifted = new ArrayList<>(children.size());
+            for (Statement child : children) shifted.add(child.shift(by));
+            return new Statement(start + by, next + by, limit + by, node, shifted);
+        }
+    }
+
+    //----------------------------------------------------------------//
+    //                           TIMING                               //
+    //----------------------------------------------------------------//
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: IncrementalParser program [edits]");
+            return;
+        }
+        String source = Files.readString(Path.of(args[0]));
+        int edits = Math.max(2, (args.length > 1) ? Integer.parseInt(args[1]) : 20000);
+        if (source.isEmpty()) {
+            System.out.println("The program is empty");
+            return;
+        }
+
+        Parser full = new Parser();
+        List<ParserFailureException> fullErrors = new ArrayList<>();
+        IncrementalParser incremental = new IncrementalParser(source);
+        Random random = new Random(1);
+        long fullNanos = 0, incrementalNanos = 0, reused = 0;
+        long[] warm = new long[edits - edits / 2];
+        for (int i = 0; i < edits; i++) {
+            // type a character somewhere, or delete the one typed before
+            int at = random.nextInt(incremental.length);
+            boolean typing = (i % 2 == 0);
+            long start = System.nanoTime();
+            if (typing) {
+                incremental.edit(at, 0, "x");
+            } else {
+                incremental.edit(incremental.editStart, 1, "");
+            }
+            long took = System.nanoTime() - start;
+            incrementalNanos += took;
+            reused += incremental.getReused();
+            if (i >= edits / 2) warm[i - edits / 2] = took;
+
+            fullErrors.clear();
+            start = System.nanoTime();
+            full.parse(incremental.getText(), fullErrors);
+            fullNanos += System.nanoTime() - start;
+            if (fullErrors.size() != incremental.getErrors().size()) {
+                throw new IllegalStateException("Edit " + i + " found " + incremental.getErrors().size() + " errors, a full parse " + fullErrors.size());
+            }
+        }
+        System.out.printf("%d edits of %s (%d lines)%n", edits, args[0], source.lines().count());
+        System.out.printf("Full parse:        %8.1f us per edit%n", fullNanos / 1e3 / edits);
+        Arrays.sort(warm);
+        System.out.printf("Incremental parse: %8.1f us per edit, once warm median %.1f us and 99th percentile %.1f us, %d statements reused per edit%n",
+                incrementalNanos / 1e3 / edits, warm[warm.length / 2] / 1e3, warm[warm.length * 99 / 100] / 1e3, reused / edits);
+    }
+}
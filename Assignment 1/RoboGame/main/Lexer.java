@@ -0,0 +1,402 @@
+package main;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Hand-written tokenizer for robot programs, used by the {@link Parser}.
+ * <p>
+ * Splits the input the same way the old Scanner delimiter did: tokens are separated
+ * by whitespace, and each of the characters {@code { } ( ) , ;} is a token on its own.
+ * A word that is a $ followed by a letter and then letters or digits is a VAR, and a
+ * lone {@code =} is an ASSIGN.
+ * Every token is reported as an int kind together with its source offsets, so the
+ * parser can match tokens with plain int comparisons and without any regex or
+ * String allocation. Only the current token is held; {@link #advance()} moves on.
+ * <p>
+ * A Lexer reads either text already in memory, or a channel, which it reads and decodes a
+ * chunk at a time: only the chunk being scanned is held, so a program of any size can be
+ * read in a fixed amount of memory, unless a single token is longer than a chunk. Offsets
+ * count chars from the start of the input in both cases.
+ */
+public class Lexer {
+
+    //----------------------------------------------------------------//
+    //                          TOKEN KINDS                           //
+    //----------------------------------------------------------------//
+
+    public static final int EOF = 0, NUMBER = 1, WORD = 2;
+    public static final int OPEN_PAREN = 3, CLOSE_PAREN = 4, OPEN_BRACE = 5, CLOSE_BRACE = 6, COMMA = 7, SEMICOLON = 8;
+
+    // Keywords, in the same order as KEYWORDS
+    public static final int MOVE = 9, TURN_L = 10, TURN_R = 11, TURN_AROUND = 12, SHIELD_ON = 13, SHIELD_OFF = 14, TAKE_FUEL = 15, WAIT = 16;
+    public static final int LOOP = 17, IF = 18, WHILE = 19;
+    public static final int LT = 20, GT = 21, EQ = 22;
+    public static final int FUEL_LEFT = 23, OPP_LR = 24, OPP_FB = 25, NUM_BARRELS = 26, BARREL_LR = 27, BARREL_FB = 28, WALL_DIST = 29;
+    public static final int ELSE = 30, ELIF = 31;
+    public static final int AND = 32, OR = 33, NOT = 34;
+    public static final int ADD = 35, SUB = 36, MUL = 37, DIV = 38;
+
+    public static final int VAR = 39, ASSIGN = 40;
+
+    private static final int FIRST_KEYWORD = MOVE;
+    private static final String[] KEYWORDS = {
+            "move", "turnL", "turnR", "turnAround", "shieldOn", "shieldOff", "takeFuel", "wait",
+            "loop", "if", "while",
+            "lt", "gt", "eq",
+            "fuelLeft", "oppLR", "oppFB", "numBarrels", "barrelLR", "barrelFB", "wallDist",
+            "else", "elif",
+            "and", "or", "not",
+            "add", "sub", "mul", "div"};
+    private static final char[][] KEYWORD_CHARS = new char[KEYWORDS.length][];
+
+    static {
+        for (int i = 0; i < KEYWORDS.length; i++) {
+            KEYWORD_CHARS[i] = KEYWORDS[i].toCharArray();
+        }
+    }
+
+    //----------------------------------------------------------------//
+    //                            FIELDS                              //
+    //----------------------------------------------------------------//
+
+    private static final int CHUNK = 64 * 1024; // chars, and bytes, read from a channel at a time
+
+    // The input, or while reading a channel the part of it from offset base
+    private char[] input;
+    private int length;
+    private int base;
+    private int pos;  // where scanning for the next token resumes
+
+    // Only while reading a channel
+    private final ReadableByteChannel channel;
+    private final CharsetDecoder decoder;
+    private final ByteBuffer bytes;
+    private boolean more; // whether the channel may have more input
+    private int pin = -1; // the input from here on must be kept, see context()
+
+    // The current token
+    private int kind;
+    private int start, end;
+    private int value; // only for NUMBER tokens
+    private int line = 1, lineStart; // its line, and the offset where that line starts
+
+    public Lexer(CharSequence input) {
+        this(input.toString().toCharArray());
+    }
+
+    public Lexer(char[] input) {
+        this(input, input.length);
+    }
+
+    public Lexer(char[] input, int length) {
+        this.input = input;
+        this.length = length;
+        this.channel = null;
+        this.decoder = null;
+        this.bytes = null;
+        advance();
+    }
+
+    /**
+     * Reads the program from a channel in UTF-8. The channel must be blocking, and is not closed.
+     * An IOException while reading is thrown as an UncheckedIOException.
+     */
+    public Lexer(ReadableByteChannel channel) {
+        this(channel, StandardCharsets.UTF_8);
+    }
+
+    public Lexer(ReadableByteChannel channel, Charset charset) {
+        this.input = new char[CHUNK];
+        this.channel = channel;
+        this.decoder = charset.newDecoder();
+        this.bytes = ByteBuffer.allocate(CHUNK);
+        this.more = true;
+        advance();
+    }
+
+    //----------------------------------------------------------------//
+    //                        CURRENT TOKEN                           //
+    //----------------------------------------------------------------//
+
+    /**
+     * @return the kind of the current token
+     */
+    public int peek() {
+        return kind;
+    }
+
+    /**
+     * @return whether the current token is of the given kind
+     */
+    public boolean at(int kind) {
+        return this.kind == kind;
+    }
+
+    /**
+     * @return the offset of the first character of the current token
+     */
+    public int start() {
+        return base + start;
+    }
+
+    /**
+     * @return the offset just past the last character of the current token
+     */
+    public int end() {
+        return base + end;
+    }
+
+    /**
+     * @return the line of the current token, counting from 1
+     */
+    public int line() {
+        return line;
+    }
+
+    /**
+     * @return the column of the first character of the current token, counting from 1
+     */
+    public int column() {
+        return start - lineStart + 1;
+    }
+
+    /**
+     * @return the value of the current token, which must be a NUMBER
+     */
+    public int intValue() {
+        return value;
+    }
+
+    /**
+     * @return the text of the current token, or "" at the end of the input.
+     * Allocates, so it is only meant for error messages.
+     */
+    public String text() {
+        return new String(input, start, end - start);
+    }
+
+    //----------------------------------------------------------------//
+    //                           SCANNING                             //
+    //----------------------------------------------------------------//
+
+    /**
+     * Moves on to the next token. At the end of the input the current token stays EOF.
+     */
+    public void advance() {
+        while (!scan()) fill();
+    }
+
+    /**
+     * Scans the next token.
+     *
+     * @return false if the input read so far ended before the next token did, while the
+     * channel may have more; only the whitespace before the token has been consumed then
+     */
+    private boolean scan() {
+        int i = pos;
+        while (i < length && isWhitespace(input[i])) {
+            if (input[i++] == '\n') { // tokens never span lines, so only whitespace moves to the next
+                line++;
+                lineStart = i;
+            }
+        }
+        if (i == length && more) {
+            pos = i;
+            return false;
+        }
+        start = i;
+        if (i == length) {
+            kind = EOF;
+            end = i;
+            pos = i;
+            return true;
+        }
+        int single = separator(input[i]);
+        if (single != WORD) {
+            kind = single;
+            end = i + 1;
+        } else {
+            while (i < length && !isWhitespace(input[i]) && separator(input[i]) == WORD) i++;
+            if (i == length && more) {
+                pos = start;
+                return false;
+            }
+            end = i;
+            kind = classify(start, end);
+        }
+        pos = end;
+        return true;
+    }
+
+    /**
+     * Drops the input before pos, unless pinned, and reads more from the channel after the rest.
+     */
+    private void fill() {
+        int keep = (pin >= 0) ? Math.min(pin, pos) : pos;
+        if (keep > 0) {
+            System.arraycopy(input, keep, input, 0, length - keep);
+            length -= keep;
+            base += keep;
+            pos -= keep;
+            start -= keep;
+            end -= keep;
+            lineStart -= keep;
+            if (pin >= 0) pin -= keep;
+        }
+        if (input.length - length < CHUNK / 4) input = Arrays.copyOf(input, 2 * input.length); // a long token
+        CharBuffer chars = CharBuffer.wrap(input, length, input.length - length);
+        try {
+            while (chars.position() == length && more) {
+                boolean finished = channel.read(bytes) < 0;
+                bytes.flip();
+                CoderResult result = decoder.decode(bytes, chars, finished);
+                if (result.isError()) result.throwException();
+                bytes.compact();
+                if (finished) {
+                    decoder.flush(chars);
+                    more = false;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        length = chars.position();
+    }
+
+    /**
+     * Moves ahead to the token starting at the offset, which must be the start of a later
+     * token, such as one found by an earlier Lexer over the same text. Only for a Lexer
+     * over text in memory.
+     */
+    public void skipTo(int offset) {
+        if (channel != null) throw new UnsupportedOperationException("Cannot skip ahead in a channel");
+        for (int i = pos; i < offset; i++) {
+            if (input[i] == '\n') {
+                line++;
+                lineStart = i + 1;
+            }
+        }
+        pos = offset;
+        advance();
+    }
+
+    /**
+     * @return the text of the current token and up to count - 1 tokens after it, separated
+     * by spaces, without moving on. Allocates, so it is only meant for error messages.
+     */
+    public String context(int count) {
+        int savedBase = base, savedPos = pos, savedKind = kind, savedStart = start, savedEnd = end, savedValue = value;
+        int savedLine = line, savedLineStart = lineStart;
+        pin = start; // reading ahead in a channel must keep the current token
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count && kind != EOF; i++) {
+            if (i > 0) text.append(' ');
+            text.append(input, start, end - start);
+            advance();
+        }
+        int moved = base - savedBase;
+        pin = -1;
+        pos = savedPos - moved;
+        kind = savedKind;
+        start = savedStart - moved;
+        end = savedEnd - moved;
+        value = savedValue;
+        line = savedLine;
+        lineStart = savedLineStart - moved;
+        return text.toString();
+    }
+
+    /**
+     * @return the kind of a single-character token, or WORD if c is part of a longer token
+     */
+    private static int separator(char c) {
+        return switch (c) {
+            case '(' -> OPEN_PAREN;
+            case ')' -> CLOSE_PAREN;
+            case '{' -> OPEN_BRACE;
+            case '}' -> CLOSE_BRACE;
+            case ',' -> COMMA;
+            case ';' -> SEMICOLON;
+            default -> WORD;
+        };
+    }
+
+    /**
+     * Same characters as the regex \s that the Scanner delimiter used.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+    }
+
+    private int classify(int from, int to) {
+        if (scanNumber(from, to)) return NUMBER;
+        int len = to - from;
+        if (input[from] == '$') return isVariable(from, to) ? VAR : WORD;
+        if (len == 1 && input[from] == '=') return ASSIGN;
+        for (int k = 0; k < KEYWORD_CHARS.length; k++) {
+            char[] keyword = KEYWORD_CHARS[k];
+            if (keyword.length != len) continue;
+            int j = 0;
+            while (j < len && keyword[j] == input[from + j]) j++;
+            if (j == len) return FIRST_KEYWORD + k;
+        }
+        return WORD;
+    }
+
+    /**
+     * Matches "\\$[A-Za-z][A-Za-z0-9]*".
+     */
+    private boolean isVariable(int from, int to) {
+        if (to - from < 2 || !isLetter(input[from + 1])) return false;
+        for (int i = from + 2; i < to; i++) {
+            char c = input[i];
+            if (!isLetter(c) && (c < '0' || c > '9')) return false;
+        }
+        return true;
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    /**
+     * Matches "-?[1-9][0-9]*|0" and stores the value. Numbers outside the int range are not numbers.
+     */
+    private boolean scanNumber(int from, int to) {
+        boolean negative = input[from] == '-';
+        int i = negative ? from + 1 : from;
+        if (i == to) return false;
+        if (input[i] == '0') {
+            if (negative || i + 1 != to) return false;
+            value = 0;
+            return true;
+        }
+        long n = 0;
+        for (; i < to; i++) {
+            char c = input[i];
+            if (c < '0' || c > '9') return false;
+            n = n * 10 + (c - '0');
+            if (n > (long) Integer.MAX_VALUE + 1) return false;
+        }
+        n = negative ? -n : n;
+        if (n > Integer.MAX_VALUE) return false;
+        value = (int) n;
+        return true;
+    }
+
+    /**
+     * @return the source text of a keyword kind, for error messages
+     */
+    public static String keyword(int kind) {
+        return KEYWORDS[kind - FIRST_KEYWORD];
+    }
+}
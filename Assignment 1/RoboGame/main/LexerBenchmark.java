@@ -0,0 +1,71 @@
+package main;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Scanner;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the Lexer with the regex-delimited Scanner the parser used to read tokens with.
+ * <p>
+ * The Scanner side reproduces the old access pattern: one hasNext(Pattern) check before
+ * every next(), as ParserUtil.require did. Both sides visit every token of the file.
+ * <p>
+ * Usage: LexerBenchmark [file] [iterations]
+ */
+public class LexerBenchmark {
+
+    private static final String DELIMITER = "\\s+|(?=[{}(),;])|(?<=[{}(),;])";
+    private static final Pattern SEMICOLON = Pattern.compile(";");
+
+    public static void main(String[] args) throws IOException {
+        Path file = Path.of((args.length > 0) ? args[0] : RoboGame.CODE_DIRECTORY + "s3_full.prog");
+        int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : 20000;
+        String program = Files.readString(file);
+
+        // warm up both sides before measuring
+        scannerTokens(program, iterations / 10);
+        lexerTokens(program, iterations / 10);
+
+        long start = System.nanoTime();
+        int scanned = scannerTokens(program, iterations);
+        long scannerTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int lexed = lexerTokens(program, iterations);
+        long lexerTime = System.nanoTime() - start;
+
+        System.out.println("File: " + file + " (" + program.length() + " chars, " + lexed / iterations + " tokens)");
+        if (scanned != lexed) System.out.println("Token counts differ: Scanner " + scanned + ", Lexer " + lexed);
+        System.out.printf("Scanner: %8.2f us/file%n", scannerTime / 1e3 / iterations);
+        System.out.printf("Lexer:   %8.2f us/file%n", lexerTime / 1e3 / iterations);
+        System.out.printf("Speedup: %8.1fx%n", scannerTime / (double) lexerTime);
+    }
+
+    private static int scannerTokens(String program, int iterations) {
+        int tokens = 0;
+        for (int i = 0; i < iterations; i++) {
+            Scanner s = new Scanner(program);
+            s.useDelimiter(DELIMITER);
+            while (s.hasNext()) {
+                s.hasNext(SEMICOLON);
+                s.next();
+                tokens++;
+            }
+        }
+        return tokens;
+    }
+
+    private static int lexerTokens(String program, int iterations) {
+        int tokens = 0;
+        for (int i = 0; i < iterations; i++) {
+            Lexer lexer = new Lexer(program);
+            while (!lexer.at(Lexer.EOF)) {
+                lexer.advance();
+                tokens++;
+            }
+        }
+        return tokens;
+    }
+}
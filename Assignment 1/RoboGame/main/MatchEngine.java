@@ -0,0 +1,182 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Phaser;
+
+/**
+ * Plays a match between the two robots of a World without the GUI.
+ * <p>
+ * WorldComponent commits a turn every WORLD_UPDATE_DELAY animation ticks. Here a turn is
+ * committed as soon as both robots have submitted their next action (or finished), so a
+ * match runs at CPU speed while producing the same sequence of states as the GUI.
+ * <p>
+ * Turn protocol on the phaser: in the first phase each robot arrives once its action is
+ * submitted and the engine waits for them all; the engine then resolves the actions with
+ * {@link World#resolveActions()}, red first, commits the turn with {@link World#updateWorld()}
+ * and arrives in the second phase, which releases the robots. The engine waits out the
+ * second phase as well, so that it can never arrive twice in it.
+ * <p>
+ * Only the engine thread works out where the robots go and what fuel they take from each
+ * other, so a match plays the same way on every run, whichever robot thread submits first.
+ */
+public class MatchEngine {
+
+    public static final int DEFAULT_MAX_TURNS = 1000;
+
+    private final World world;
+    private final int maxTurns;
+
+    public MatchEngine(World world) {
+        this(world, DEFAULT_MAX_TURNS);
+    }
+
+    public MatchEngine(World world, int maxTurns) {
+        this.world = world;
+        this.maxTurns = maxTurns;
+    }
+
+    /**
+     * Runs the match to completion. The world can no longer be used after this call.
+     *
+     * @return the outcome of the match
+     */
+    public Result run() {
+        Phaser phaser = new Phaser(1); // the engine's own party
+        Thread[] threads = world.startLockStep(phaser);
+        Robot red = world.getRobot(1);
+        Robot blue = world.getRobot(2);
+        int turns = 0;
+        Result result;
+        try {
+            while (turns < maxTurns) {
+                phaser.arriveAndAwaitAdvance(); // both robots have submitted an action or finished
+                world.resolveActions();
+                if (outOfFuel(red, blue)) break; // the GUI stops before committing a fatal turn
+                world.updateWorld();
+                turns++;
+                if (outOfFuel(red, blue) || turns == maxTurns) break; // the robots stay where they are for the result
+                phaser.arriveAndAwaitAdvance(); // let the robots see the committed turn
+            }
+            result = new Result(turns, red, blue);
+        } finally {
+            world.reset();
+            phaser.forceTermination();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks both robots, so that both are marked dead when they run out together.
+     */
+    static boolean outOfFuel(Robot red, Robot blue) {
+        boolean redOut = red.checkOutOfFuel();
+        boolean blueOut = blue.checkOutOfFuel();
+        return redOut || blueOut;
+    }
+
+    /**
+     * The outcome of a match, captured before the world is reset.
+     */
+    public static class Result {
+
+        private final int turns;
+        private final int fuel1, fuel2;
+        private final boolean dead1, dead2;
+        private final List<String> history1, history2; // formatted on demand
+
+        Result(int turns, Robot red, Robot blue) {
+            this.turns = turns;
+            this.fuel1 = red.getFuelLevel();
+            this.fuel2 = blue.getFuelLevel();
+            this.dead1 = red.isDead();
+            this.dead2 = blue.isDead();
+            this.history1 = red.getHistory();
+            this.history2 = blue.getHistory();
+        }
+
+        public int getTurns() {
+            return turns;
+        }
+
+        public int getFuel(int robot) {
+            return robot == 1 ? fuel1 : fuel2;
+        }
+
+        public boolean isDead(int robot) {
+            return robot == 1 ? dead1 : dead2;
+        }
+
+        /**
+         * The states recorded by {@link Robot#readState()}, in order.
+         */
+        public List<String> getHistory(int robot) {
+            return robot == 1 ? history1 : history2;
+        }
+
+        /**
+         * @return 1 or 2 for the winning robot, or 0 for a draw. A robot that is still alive
+         * wins; if the turn limit was reached the robot with more fuel wins.
+         */
+        public int getWinner() {
+            if (dead1 != dead2) return dead1 ? 2 : 1;
+            if (dead1 || fuel1 == fuel2) return 0;
+            return fuel1 > fuel2 ? 1 : 2;
+        }
+
+        @Override
+        public String toString() {
+            String winner = switch (getWinner()) {
+                case 1 -> "red wins";
+                case 2 -> "blue wins";
+                default -> "draw";
+            };
+            return winner + " after " + turns + " turns (red fuel " + fuel1 + ", blue fuel " + fuel2 + ")";
+        }
+    }
+
+    /**
+     * Plays a single headless match, optionally recording it for {@link ReplayReader}.
+     * Usage: MatchEngine redProgram blueProgram [maxTurns] [seed] [replayFile]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: MatchEngine redProgram blueProgram [maxTurns] [seed] [replayFile]");
+            return;
+        }
+        int maxTurns = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_MAX_TURNS;
+        World world = (args.length > 3) ? new World(new FuelSchedule(Long.parseLong(args[3]), maxTurns)) : new World();
+        world.loadRobotProgram(1, new File(args[0]));
+        world.loadRobotProgram(2, new File(args[1]));
+
+        ReplayWriter replay = (args.length > 4) ? new ReplayWriter(Path.of(args[4])) : null;
+        world.setReplay(replay);
+
+        long start = System.nanoTime();
+        Result result;
+        try {
+            result = new MatchEngine(world, maxTurns).run();
+        } finally {
+            if (replay != null) replay.close();
+        }
+        long elapsed = System.nanoTime() - start;
+        DebugLog.flush(); // print the robots' log before the results
+
+        for (int i = 0; i < Math.max(result.history1.size(), result.history2.size()); i++) {
+            String red = (i < result.history1.size()) ? result.history1.get(i) : "";
+            String blue = (i < result.history2.size()) ? result.history2.get(i) : "";
+            System.out.printf("%4d  %-45s %s%n", i, red, blue);
+        }
+        System.out.println(result);
+        System.out.printf("Simulated in %.2f ms%n", elapsed / 1e6);
+    }
+}
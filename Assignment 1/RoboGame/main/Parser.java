@@ -3,24 +3,41 @@ package main;
 import nodes.BlockNode;
 import nodes.LoopNode;
 import nodes.NumberNode;
+import nodes.RootNode;
 import nodes.WhileNode;
 import nodes.conditionals.IfNode;
+import nodes.conditionals.logic.AndNode;
+import nodes.conditionals.logic.NotNode;
+import nodes.conditionals.logic.OrNode;
 import nodes.conditionals.relops.EqualNode;
 import nodes.conditionals.relops.GreaterThanNode;
 import nodes.conditionals.relops.LessThanNode;
+import nodes.expressions.AddNode;
+import nodes.expressions.DivideNode;
+import nodes.expressions.MultiplyNode;
+import nodes.expressions.SubtractNode;
 import nodes.interfaces.BooleanNode;
+import nodes.interfaces.ExpressionNode;
 import nodes.interfaces.ProgramNode;
 import nodes.movement.*;
 import nodes.sensors.SensorNode;
 import nodes.sensors.SensorType;
+import nodes.variables.AssignmentNode;
+import nodes.variables.VariableNode;
 import util.exepeptions.ParserFailureException;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
-import java.util.Set;
-import java.util.regex.Pattern;
 
+import static main.Lexer.*;
+import static main.Parser.ParserUtil.checkFor;
+import static main.Parser.ParserUtil.error;
 import static main.Parser.ParserUtil.require;
 
 public class Parser {
@@ -29,18 +46,7 @@ public class Parser {
     //                            FIELDS                              //
     //----------------------------------------------------------------//
 
-    // Patterns for the terminals in the grammar
-    private static final Pattern NUMPAT = Pattern.compile("-?[1-9][0-9]*|0");
-    private static final Pattern OPENPAREN = Pattern.compile("\\(");
-    private static final Pattern CLOSEPAREN = Pattern.compile("\\)");
-    private static final Pattern OPENBRACE = Pattern.compile("\\{");
-    private static final Pattern CLOSEBRACE = Pattern.compile("}");
-    private static final Pattern COMMA = Pattern.compile(",");
-    private static final Pattern SEMICOLON = Pattern.compile(";");
-
-    // Sets of valid actions and relational operators, used for parsing
-    private static final Set<String> ACTIONS = Set.of("move", "turnL", "turnR", "takeFuel", "wait", "shieldOn", "shieldOff", "turnAround");
-    private static final Set<String> RELOPS = Set.of("lt", "gt", "eq");
+    // The terminals of the grammar are the token kinds of the Lexer
 
     // Error messages
     private static final String MISSING_SEMICOLON = "Missing semicolon";
@@ -49,6 +55,16 @@ public class Parser {
     private static final String MISSING_OPEN_PAREN = "Missing opening parenthesis";
     private static final String MISSING_CLOSE_PAREN = "Missing closing parenthesis";
 
+    // Slots of the variables of the program being parsed, by name, see ExecutionContext.
+    // A parser can therefore only parse one program at a time.
+    private final Map<String, Integer> variables = new HashMap<>();
+
+    // Collects the errors while parsing with recovery, null while parsing without
+    private List<ParserFailureException> errors;
+
+    // The statements of the previous parse that can be reused, while parsing incrementally
+    private IncrementalParser previous;
+
     //----------------------------------------------------------------//
     //                            PARSER                              //
     //----------------------------------------------------------------//
@@ -60,8 +76,75 @@ public class Parser {
      * Returns the parse tree (ProgramNode) representing the program.
      */
     public ProgramNode parse(Scanner s) {
-        s.useDelimiter("\\s+|(?=[{}(),;])|(?<=[{}(),;])");
-        return parseProgram(s);
+        s.useDelimiter("\\z"); // the whole remaining input as one token
+        return parse(s.hasNext() ? s.next() : "");
+    }
+
+    /**
+     * Parses the text of a program.
+     * <p>
+     * Returns the parse tree (ProgramNode) representing the program.
+     */
+    public ProgramNode parse(CharSequence program) {
+        variables.clear();
+        errors = null;
+        return parseProgram(new Lexer(program));
+    }
+
+    /**
+     * Parses a program read from the channel in UTF-8, a chunk at a time, so that the whole
+     * source is never held in memory, only the tree. The channel is not closed.
+     *
+     * @throws IOException if the channel cannot be read or does not hold UTF-8 text
+     */
+    public ProgramNode parse(ReadableByteChannel channel) throws IOException {
+        variables.clear();
+        errors = null;
+        try {
+            return parseProgram(new Lexer(channel));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Parses the text of a program, carrying on past syntax errors to find all of them.
+     * <p>
+     * After an error the parser skips ahead to the end of the statement, the next ";" or the
+     * end of the statement's block, and resumes with the statement after it. A missing ";"
+     * before the next statement or "}", and an empty block, are reported without skipping
+     * anything. An error can still hide errors in the part that was skipped, or cause a
+     * second one where the parser resumes.
+     *
+     * @param errors receives every error found, in the order of the source, each with its
+     *               line and column
+     * @return the statements that did parse, which are only meant to be run if errors is empty
+     */
+    public ProgramNode parse(CharSequence program, List<ParserFailureException> errors) {
+        variables.clear();
+        this.errors = errors;
+        try {
+            return parseProgram(new Lexer(program));
+        } finally {
+            this.errors = null;
+        }
+    }
+
+    /**
+     * Parses a program with recovery as {@link #parse(CharSequence, List)} does, but reuses
+     * the statements of the previous parse whose text has not changed, see IncrementalParser.
+     * Variables keep the slots they were given by earlier parses, so the reused statements
+     * stay valid; the slots of variables no longer used are not given out again.
+     */
+    ProgramNode parse(Lexer s, List<ParserFailureException> errors, IncrementalParser previous) {
+        this.errors = errors;
+        this.previous = previous;
+        try {
+            return parseProgram(s);
+        } finally {
+            this.errors = null;
+            this.previous = null;
+        }
     }
 
     /**
@@ -69,186 +152,269 @@ public class Parser {
      * <p>
      * PROG ::= [STMT]*
      *
-     * @param s Scanner positioned at the start of the program.
+     * @param s Lexer positioned at the start of the program.
      * @return A ProgramNode representing the parsed program.
      */
-    private ProgramNode parseProgram(Scanner s) {
-        // Build a list to hold the parsed statement nodes from the scanner input
+    private ProgramNode parseProgram(Lexer s) {
+        // Build a list to hold the parsed statement nodes from the lexer input
         List<ProgramNode> nodes = new ArrayList<>();
-        while (s.hasNext()) { // Parse each statement in the program
-            nodes.add(parseStatements(s));
+        while (!s.at(EOF)) { // Parse each statement in the program
+            try {
+                nodes.add(parseStatement(s));
+            } catch (ParserFailureException e) {
+                recover(e, s, false);
+            }
         }
 
         // Return a new ProgramNode that contains each statement in the parsed program
-        return robot -> { // Anonymous ProgramNode implementation
-            for (ProgramNode statement : nodes) {
-                statement.execute(robot);
-            }
-        };
+        return new RootNode(nodes, variables.size());
+    }
+
+    /**
+     * Parses a statement, or while parsing incrementally reuses it from the previous parse.
+     */
+    private ProgramNode parseStatement(Lexer s) {
+        if (previous == null) return parseStatements(s);
+        ProgramNode node = previous.reuse(s);
+        if (node != null) return node;
+
+        int start = s.start(), errorCount = errors.size(), mark = previous.mark();
+        node = parseStatements(s);
+        if (errors.size() == errorCount) previous.parsed(start, s, node, mark); // only statements without errors are reused
+        return node;
     }
 
     /**
      * Parses statements according to the grammar rules for STMT:
      * <p>
-     * STMT ::= ACT ";" | LOOP | IF | WHILE
+     * STMT ::= ACT ";" | LOOP | IF | WHILE | ASSGN ";"
      *
-     * @param s Scanner positioned at the start of a statement.
+     * @param s Lexer positioned at the start of a statement.
      * @return A StatementNode representing the parsed statement.
      */
-    private ProgramNode parseStatements(Scanner s) {
-        String statementToken = s.next();
+    private ProgramNode parseStatements(Lexer s) {
+        int statementToken = s.peek();
 
         // Check if the token is an action, loop, if, or while statement
-        if (ACTIONS.contains(statementToken)) {
-            return parseAction(s, statementToken); // ACT
-        } else if ("loop".equals(statementToken)) {
-            return parseLoop(s); // LOOP
-        } else if ("if".equals(statementToken)) {
-            return parseIf(s); // IF
-        } else if ("while".equals(statementToken)) {
-            return parseWhile(s); // WHILE
-        } else {
-            throw new ParserFailureException("Unexpected statement token: " + statementToken);
+        switch (statementToken) {
+            case MOVE, TURN_L, TURN_R, TURN_AROUND, SHIELD_ON, SHIELD_OFF, TAKE_FUEL, WAIT -> {
+                s.advance();
+                return parseAction(s, statementToken); // ACT
+            }
+            case LOOP -> {
+                s.advance();
+                return parseLoop(s); // LOOP
+            }
+            case IF -> {
+                s.advance();
+                return parseIf(s); // IF
+            }
+            case WHILE -> {
+                s.advance();
+                return parseWhile(s); // WHILE
+            }
+            case VAR -> {
+                return parseAssignment(s); // ASSGN
+            }
+            case EOF -> throw error("Unexpected end of input, expected a statement", s);
+            default -> throw error("Unexpected statement token: " + s.text(), s);
         }
     }
 
     /**
-     * Parses an action from the given scanner input according to the specified grammar rule for ACT.
-     * This method is called by {@link #parseStatements(Scanner)}.
+     * Parses an action from the given lexer input according to the specified grammar rule for ACT.
+     * This method is called by {@link #parseStatements(Lexer)}.
      * <p>
      * Grammar rule:
-     * ACT ::= "move" | "turnL" | "turnR" | "turnAround" | "shieldOn" | "shieldOff" | "takeFuel" | "wait"
+     * ACT ::= "move" [ "(" EXPR ")" ] | "turnL" | "turnR" | "turnAround" | "shieldOn" | "shieldOff" | "takeFuel" | "wait" [ "(" EXPR ")" ]
      *
-     * @param s The scanner containing the action to be parsed.
+     * @param s      The lexer positioned just after the action.
+     * @param action The token kind of the action.
      * @return A {@code ProgramNode} representing the parsed action. Adjust the return type as necessary.
      */
-    private ProgramNode parseAction(Scanner s, String action) {
-        require(SEMICOLON, MISSING_SEMICOLON, s); // ";"
+    private ProgramNode parseAction(Lexer s, int action) {
+        // Only move and wait take an optional argument
+        ExpressionNode count = null;
+        if ((action == MOVE || action == WAIT) && checkFor(OPEN_PAREN, s)) {
+            count = parseExpression(s);
+            require(CLOSE_PAREN, MISSING_CLOSE_PAREN + " for " + Lexer.keyword(action), s);
+        }
+        requireSemicolon(s); // ";"
 
         // Check if the action token matches one of the valid action types and produce a new MovementNode
         return switch (action) {
-            case "move" -> new MoveNode();
-            case "turnL" -> new TurnLNode();
-            case "turnR" -> new TurnRNode();
-            case "turnAround" -> new TurnAroundNode();
-            case "shieldOn" -> new ShieldOnNode();
-            case "shieldOff" -> new ShieldOffNode();
-            case "takeFuel" -> new TakeFuelNode();
-            case "wait" -> new WaitNode();
-            default -> throw new ParserFailureException("Unexpected action: " + action);
+            case MOVE -> new MoveNode(count);
+            case TURN_L -> new TurnLNode();
+            case TURN_R -> new TurnRNode();
+            case TURN_AROUND -> new TurnAroundNode();
+            case SHIELD_ON -> new ShieldOnNode();
+            case SHIELD_OFF -> new ShieldOffNode();
+            case TAKE_FUEL -> new TakeFuelNode();
+            case WAIT -> new WaitNode(count);
+            default -> throw new ParserFailureException("Unexpected action: " + Lexer.keyword(action));
         };
     }
 
     /**
-     * Parses a loop from the given scanner input according to the specified grammar rule for LOOP.
-     * This method is called by {@link #parseStatements(Scanner)}.
+     * Parses a loop from the given lexer input according to the specified grammar rule for LOOP.
+     * This method is called by {@link #parseStatements(Lexer)}.
      * <p>
      * Grammar rule:
      * LOOP ::= "loop" BLOCK
      *
-     * @param s The scanner positioned at the "loop" keyword.
+     * @param s The lexer positioned just after the "loop" keyword.
      * @return A {@code LoopNode} representing the parsed loop.
      */
-    private LoopNode parseLoop(Scanner s) {
+    private LoopNode parseLoop(Lexer s) {
         // Curly brace check and block parse
-        require(OPENBRACE, MISSING_OPEN_BRACE, s);
+        require(OPEN_BRACE, MISSING_OPEN_BRACE, s);
         BlockNode blockNode = parseBlock(s);
-        require(CLOSEBRACE, MISSING_CLOSE_BRACE, s);
+        require(CLOSE_BRACE, MISSING_CLOSE_BRACE, s);
 
         return new LoopNode(blockNode);
     }
 
     /**
-     * Parses an if statement from the given scanner input according to the specified grammar rule for IF.
-     * This method is called by {@link #parseStatements(Scanner)}.
+     * Parses an if statement from the given lexer input according to the specified grammar rule for IF.
+     * This method is called by {@link #parseStatements(Lexer)}.
      * <p>
      * Grammar rule:
-     * IF ::= "if" "(" COND ")" BLOCK
+     * IF ::= "if" "(" COND ")" BLOCK [ "elif" "(" COND ")" BLOCK ]* [ "else" BLOCK ]
+     * <p>
+     * An elif is parsed as an else block holding a single nested if.
      *
-     * @param s The scanner positioned at the "if" keyword.
+     * @param s The lexer positioned just after the "if" or "elif" keyword.
      * @return An {@code IfNode} representing the parsed if statement.
      */
-    private ProgramNode parseIf(Scanner s) {
+    private IfNode parseIf(Lexer s) {
         // Parentheses check and condition parse
-        require(OPENPAREN, MISSING_OPEN_PAREN + " for IF", s);
+        require(OPEN_PAREN, MISSING_OPEN_PAREN + " for IF", s);
         BooleanNode condition = parseCondition(s);
-        require(CLOSEPAREN, MISSING_CLOSE_PAREN + " for IF", s);
+        require(CLOSE_PAREN, MISSING_CLOSE_PAREN + " for IF", s);
 
         // Curly braces check and block parse
-        require(OPENBRACE, MISSING_OPEN_BRACE + " for IF BLOCK", s);
+        require(OPEN_BRACE, MISSING_OPEN_BRACE + " for IF BLOCK", s);
         BlockNode ifBlock = parseBlock(s);
-        require(CLOSEBRACE, MISSING_CLOSE_BRACE + " for IF BLOCK", s);
+        require(CLOSE_BRACE, MISSING_CLOSE_BRACE + " for IF BLOCK", s);
+
+        BlockNode elseBlock = null;
+        if (checkFor(ELIF, s)) {
+            elseBlock = new BlockNode(List.of(parseIf(s)));
+        } else if (checkFor(ELSE, s)) {
+            require(OPEN_BRACE, MISSING_OPEN_BRACE + " for ELSE BLOCK", s);
+            elseBlock = parseBlock(s);
+            require(CLOSE_BRACE, MISSING_CLOSE_BRACE + " for ELSE BLOCK", s);
+        }
 
-        return new IfNode(condition, ifBlock);
+        return new IfNode(condition, ifBlock, elseBlock);
     }
 
     /**
-     * Parses a while loop from the given scanner input according to the specified grammar rule for WHILE.
-     * This method is called by {@link #parseStatements(Scanner)}.
+     * Parses a while loop from the given lexer input according to the specified grammar rule for WHILE.
+     * This method is called by {@link #parseStatements(Lexer)}.
      * <p>
      * Grammar rule:
      * WHILE ::= "while" "(" COND ")" BLOCK
      *
-     * @param s The scanner positioned at the "while" keyword.
+     * @param s The lexer positioned just after the "while" keyword.
      * @return A {@code WhileNode} representing the parsed while loop.
      */
-    private WhileNode parseWhile(Scanner s) {
+    private WhileNode parseWhile(Lexer s) {
         // Parentheses check and condition parse
-        require(OPENPAREN, MISSING_OPEN_PAREN + " for WHILE", s);
+        require(OPEN_PAREN, MISSING_OPEN_PAREN + " for WHILE", s);
         BooleanNode condition = parseCondition(s);
-        require(CLOSEPAREN, MISSING_CLOSE_PAREN + " for WHILE", s);
+        require(CLOSE_PAREN, MISSING_CLOSE_PAREN + " for WHILE", s);
 
         // Curly braces check and block parse
-        require(OPENBRACE, MISSING_OPEN_BRACE + " for WHILE BLOCK", s);
+        require(OPEN_BRACE, MISSING_OPEN_BRACE + " for WHILE BLOCK", s);
         BlockNode ifBlock = parseBlock(s);
-        require(CLOSEBRACE, MISSING_CLOSE_BRACE + " for WHILE BLOCK", s);
+        require(CLOSE_BRACE, MISSING_CLOSE_BRACE + " for WHILE BLOCK", s);
 
         return new WhileNode(condition, ifBlock);
     }
 
     /**
-     * Parses a block from the given scanner input according to the specified grammar rule for BLOCK.
-     * This method is called by {@link #parseLoop(Scanner)}, {@link #parseIf(Scanner)}, and {@link #parseWhile(Scanner)}.
+     * Parses an assignment from the given lexer input according to the specified grammar rule for ASSGN.
+     * This method is called by {@link #parseStatements(Lexer)}.
+     * <p>
+     * Grammar rule:
+     * ASSGN ::= VAR "=" EXPR
+     *
+     * @param s The lexer positioned at the variable.
+     * @return An {@code AssignmentNode} representing the parsed assignment.
+     */
+    private AssignmentNode parseAssignment(Lexer s) {
+        VariableNode variable = parseVariable(s);
+        require(ASSIGN, "Missing = in assignment to " + variable, s);
+        ExpressionNode value = parseExpression(s);
+        requireSemicolon(s); // ";"
+        return new AssignmentNode(variable, value);
+    }
+
+    /**
+     * Parses a block from the given lexer input according to the specified grammar rule for BLOCK.
+     * This method is called by {@link #parseLoop(Lexer)}, {@link #parseIf(Lexer)}, and {@link #parseWhile(Lexer)}.
      * <p>
      * Grammar rule:
      * BLOCK ::= "{" [STMT]* "}"
      *
-     * @param s The scanner positioned at the start of a block.
+     * @param s The lexer positioned at the start of a block.
      * @return A {@code BlockNode} representing the parsed block.
      */
-    private BlockNode parseBlock(Scanner s) {
+    private BlockNode parseBlock(Lexer s) {
         List<ProgramNode> statements = new ArrayList<>();
-        while (!s.hasNext(CLOSEBRACE)) { // Keep parsing statements until a close brace
-            statements.add(parseStatements(s));
+        while (!s.at(CLOSE_BRACE)) { // Keep parsing statements until a close brace
+            if (errors != null && s.at(EOF)) break; // the caller reports the missing brace
+            try {
+                statements.add(parseStatement(s));
+            } catch (ParserFailureException e) {
+                recover(e, s, true);
+            }
         }
 
         // Check if the block is empty and return a new BlockNode
-        if (statements.isEmpty()) throw new ParserFailureException("Empty block");
+        if (statements.isEmpty()) report(error("Empty block", s));
         return new BlockNode(statements);
     }
 
     /**
      * Parse condition according to the grammar rule for COND:
      * <p>
-     * COND ::= RELOP "(" SENS "," NUM ")"
+     * COND ::= RELOP "(" EXPR "," EXPR ")" | "and" "(" COND "," COND ")" | "or" "(" COND "," COND ")" | "not" "(" COND ")"
      *
-     * @param s Scanner positioned at the start of a condition.
+     * @param s Lexer positioned at the start of a condition.
      * @return A BooleanNode representing the parsed condition.
      */
-    private BooleanNode parseCondition(Scanner s) {
-        String relop = s.next();
-        if (!RELOPS.contains(relop)) {
-            throw new ParserFailureException("Expected relational operator but found: " + relop);
+    private BooleanNode parseCondition(Lexer s) {
+        int operator = s.peek();
+        switch (operator) {
+            case LT, GT, EQ -> {
+                s.advance();
+                require(OPEN_PAREN, MISSING_OPEN_PAREN + " for COND", s);
+                ExpressionNode left = parseExpression(s);
+                require(COMMA, "Expected comma", s);
+                ExpressionNode right = parseExpression(s);
+                require(CLOSE_PAREN, MISSING_CLOSE_PAREN + " for COND", s);
+                return parseRelop(operator, left, right);
+            }
+            case AND, OR -> {
+                s.advance();
+                require(OPEN_PAREN, MISSING_OPEN_PAREN + " for " + Lexer.keyword(operator), s);
+                BooleanNode left = parseCondition(s);
+                require(COMMA, "Expected comma", s);
+                BooleanNode right = parseCondition(s);
+                require(CLOSE_PAREN, MISSING_CLOSE_PAREN + " for " + Lexer.keyword(operator), s);
+                return (operator == AND) ? new AndNode(left, right) : new OrNode(left, right);
+            }
+            case NOT -> {
+                s.advance();
+                require(OPEN_PAREN, MISSING_OPEN_PAREN + " for not", s);
+                BooleanNode condition = parseCondition(s);
+                require(CLOSE_PAREN, MISSING_CLOSE_PAREN + " for not", s);
+                return new NotNode(condition);
+            }
+            default -> throw error("Expected condition but found: " + s.text(), s);
         }
-
-        // "(" SENS "," NUM ")" parse
-        require(OPENPAREN, MISSING_OPEN_PAREN + " for COND", s);
-        SensorNode sensor = parseSensor(s);
-        require(COMMA, "Expected comma", s);
-        NumberNode number = parseNumber(s);
-        require(CLOSEPAREN, MISSING_CLOSE_PAREN + " for COND", s);
-
-        return parseRelop(relop, sensor, number);
     }
 
     /**
@@ -256,56 +422,106 @@ public class Parser {
      * <p>
      * RELOP ::= "lt" | "gt" | "eq"
      *
-     * @param sensor The sensor node to compare.
-     * @param number The number node to compare.
+     * @param relop The token kind of the relational operator.
+     * @param left  The left expression to compare.
+     * @param right The right expression to compare.
      * @return A BooleanNode representing the parsed relational operator.
      */
-    private BooleanNode parseRelop(String relop, SensorNode sensor, NumberNode number) {
+    private BooleanNode parseRelop(int relop, ExpressionNode left, ExpressionNode right) {
         return switch (relop) { // Check if the token matches one of the valid relational operators
-            case "lt" -> new LessThanNode(sensor, number); // Return a new BooleanNode based on the relational operator
-            case "gt" -> new GreaterThanNode(sensor, number);
-            case "eq" -> new EqualNode(sensor, number);
-            default -> throw new ParserFailureException("Unexpected relational operator: " + relop);
+            case LT -> new LessThanNode(left, right); // Return a new BooleanNode based on the relational operator
+            case GT -> new GreaterThanNode(left, right);
+            case EQ -> new EqualNode(left, right);
+            default -> throw new ParserFailureException("Unexpected relational operator: " + Lexer.keyword(relop));
         };
     }
 
+    /**
+     * Parse an expression according to the grammar rules for EXPR and OP:
+     * <p>
+     * EXPR ::= NUM | SENS | VAR | OP "(" EXPR "," EXPR ")"
+     * OP   ::= "add" | "sub" | "mul" | "div"
+     *
+     * @param s Lexer positioned at the start of an expression.
+     * @return An ExpressionNode representing the parsed expression.
+     */
+    private ExpressionNode parseExpression(Lexer s) {
+        int operator = s.peek();
+        switch (operator) {
+            case NUMBER -> {
+                return parseNumber(s);
+            }
+            case VAR -> {
+                return parseVariable(s);
+            }
+            case ADD, SUB, MUL, DIV -> {
+                s.advance();
+                require(OPEN_PAREN, MISSING_OPEN_PAREN + " for " + Lexer.keyword(operator), s);
+                ExpressionNode left = parseExpression(s);
+                require(COMMA, "Expected comma", s);
+                ExpressionNode right = parseExpression(s);
+                require(CLOSE_PAREN, MISSING_CLOSE_PAREN + " for " + Lexer.keyword(operator), s);
+                return switch (operator) {
+                    case ADD -> new AddNode(left, right);
+                    case SUB -> new SubtractNode(left, right);
+                    case MUL -> new MultiplyNode(left, right);
+                    default -> new DivideNode(left, right);
+                };
+            }
+            default -> {
+                return parseSensor(s);
+            }
+        }
+    }
+
     /**
      * Parse a sensor according to the grammar rule for SENS:
      * <p>
-     * SENS  ::= "fuelLeft" | "oppLR" | "oppFB" | "numBarrels" | "barrelLR" | "barrelFB" | "wallDist"
+     * SENS  ::= "fuelLeft" | "oppLR" | "oppFB" | "numBarrels" | "barrelLR" [ "(" EXPR ")" ] | "barrelFB" [ "(" EXPR ")" ] | "wallDist"
      *
-     * @param s Scanner positioned at the start of a sensor.
+     * @param s Lexer positioned at the start of a sensor.
      * @return A SensorNode representing the parsed sensor.
      */
-    private SensorNode parseSensor(Scanner s) {
-        if (!s.hasNext()) throw new ParserFailureException("Expected sensor but found end of input");
-        String sensor = s.next(); // Get the sensor token
+    private SensorNode parseSensor(Lexer s) {
+        if (s.at(EOF)) throw error("Expected sensor but found end of input", s);
+        int sensor = s.peek(); // Get the sensor token
 
         // Check if the sensor token matches one of the sensor types
         return switch (sensor) {
-            case "fuelLeft", "oppLR", "oppFB", "numBarrels", "barrelLR", "barrelFB", "wallDist" ->
-                    new SensorNode(getSensorType(sensor));
-            default -> throw new ParserFailureException("Expected sensor but found: " + sensor);
+            case FUEL_LEFT, OPP_LR, OPP_FB, NUM_BARRELS, WALL_DIST -> {
+                s.advance();
+                yield new SensorNode(getSensorType(sensor));
+            }
+            case BARREL_LR, BARREL_FB -> { // Optional barrel index
+                s.advance();
+                ExpressionNode index = null;
+                if (checkFor(OPEN_PAREN, s)) {
+                    index = parseExpression(s);
+                    require(CLOSE_PAREN, MISSING_CLOSE_PAREN + " for " + Lexer.keyword(sensor), s);
+                }
+                yield new SensorNode(getSensorType(sensor), index);
+            }
+            default -> throw error("Expected sensor but found: " + s.text(), s);
         };
     }
 
     /**
-     * Helper method to convert a sensor string to a SensorType enum
+     * Helper method to convert a sensor token to a SensorType enum
      *
-     * @param sensor The sensor string to convert
+     * @param sensor The sensor token kind to convert
      * @return The corresponding SensorType enum
      */
-    private static SensorType getSensorType(String sensor) {
+    private static SensorType getSensorType(int sensor) {
         SensorType sensorType;
         switch (sensor) {
-            case "fuelLeft" -> sensorType = SensorType.FUEL_LEFT;
-            case "oppLR" -> sensorType = SensorType.OPP_LR;
-            case "oppFB" -> sensorType = SensorType.OPP_FB;
-            case "numBarrels" -> sensorType = SensorType.NUM_BARRELS;
-            case "barrelLR" -> sensorType = SensorType.BARREL_LR;
-            case "barrelFB" -> sensorType = SensorType.BARREL_FB;
-            case "wallDist" -> sensorType = SensorType.WALL_DIST;
-            default -> throw new IllegalStateException("Unexpected sensor type: " + sensor);
+            case FUEL_LEFT -> sensorType = SensorType.FUEL_LEFT;
+            case OPP_LR -> sensorType = SensorType.OPP_LR;
+            case OPP_FB -> sensorType = SensorType.OPP_FB;
+            case NUM_BARRELS -> sensorType = SensorType.NUM_BARRELS;
+            case BARREL_LR -> sensorType = SensorType.BARREL_LR;
+            case BARREL_FB -> sensorType = SensorType.BARREL_FB;
+            case WALL_DIST -> sensorType = SensorType.WALL_DIST;
+            default -> throw new IllegalStateException("Unexpected sensor type: " + Lexer.keyword(sensor));
         }
         return sensorType;
     }
@@ -314,19 +530,105 @@ public class Parser {
      * Parse a number according to the grammar rule for NUM:
      * NUM   ::= "-?[1-9][0-9]*|0"
      *
-     * @param s Scanner positioned at the start of a number.
+     * @param s Lexer positioned at the start of a number.
      * @return A NumberNode representing the parsed number.
      */
-    private NumberNode parseNumber(Scanner s) {
-        if (!s.hasNext(NUMPAT)) { // Check if the next token is a number
-            throw new ParserFailureException("Expected number, found: " + s.next());
+    private NumberNode parseNumber(Lexer s) {
+        if (!s.at(NUMBER)) { // Check if the next token is a number
+            throw error("Expected number, found: " + s.text(), s);
         }
 
         // Parse the number and return a new NumberNode
-        int number = s.nextInt();
+        int number = s.intValue();
+        s.advance();
         return new NumberNode(number);
     }
 
+    /**
+     * Parse a variable according to the grammar rule for VAR, giving it the next free
+     * slot the first time its name is seen:
+     * VAR   ::= "\\$[A-Za-z][A-Za-z0-9]*"
+     *
+     * @param s Lexer positioned at the start of a variable.
+     * @return A VariableNode representing the parsed variable.
+     */
+    private VariableNode parseVariable(Lexer s) {
+        if (!s.at(VAR)) {
+            throw error("Expected variable, found: " + s.text(), s);
+        }
+        String name = s.text();
+        s.advance();
+        Integer slot = variables.get(name);
+        if (slot == null) {
+            slot = variables.size();
+            variables.put(name, slot);
+        }
+        return new VariableNode(name, slot);
+    }
+
+    //----------------------------------------------------------------//
+    //                          RECOVERY                              //
+    //----------------------------------------------------------------//
+
+    /**
+     * Requires the ";" that ends a statement. While recovering, a missing ";" right before
+     * the next statement or the end of the block is reported and taken as read.
+     */
+    private void requireSemicolon(Lexer s) {
+        if (errors != null && !s.at(SEMICOLON) && startsStatementOrEnd(s.peek())) {
+            report(error(MISSING_SEMICOLON, s));
+            return;
+        }
+        require(SEMICOLON, MISSING_SEMICOLON, s);
+    }
+
+    private static boolean startsStatementOrEnd(int kind) {
+        return switch (kind) {
+            case MOVE, TURN_L, TURN_R, TURN_AROUND, SHIELD_ON, SHIELD_OFF, TAKE_FUEL, WAIT, LOOP, IF, WHILE, VAR, CLOSE_BRACE, EOF -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Throws the error, or while recovering adds it to the errors unless one was already
+     * reported at the same token.
+     */
+    private void report(ParserFailureException e) {
+        if (errors == null) throw e;
+        if (errors.isEmpty() || e.getOffset() < 0 || errors.get(errors.size() - 1).getOffset() != e.getOffset()) {
+            errors.add(e);
+        }
+    }
+
+    /**
+     * Reports the error of a statement that failed to parse and skips the rest of it: the
+     * tokens up to and including the next ";" outside any braces, or a whole block
+     * (with any elif and else blocks after it), or up to the "}" that ends the enclosing
+     * block, which is left for that block. A stray "}" at the top level is skipped.
+     *
+     * @param inBlock whether the statement is within a block rather than at the top level
+     */
+    private void recover(ParserFailureException e, Lexer s, boolean inBlock) {
+        report(e);
+        int depth = 0;
+        while (!s.at(EOF)) {
+            int kind = s.peek();
+            if (kind == CLOSE_BRACE && depth == 0) {
+                if (!inBlock) s.advance();
+                return;
+            }
+            s.advance();
+            if (kind == OPEN_BRACE) {
+                depth++;
+            } else if (kind == CLOSE_BRACE) {
+                depth--;
+                if (depth == 0 && !s.at(ELIF) && !s.at(ELSE)) return;
+            } else if (kind == SEMICOLON && depth == 0) {
+                return;
+            }
+        }
+    }
+
     //----------------------------------------------------------------//
     //                           UTILITY                              //
     //----------------------------------------------------------------//
@@ -335,83 +637,65 @@ public class Parser {
      * Utility methods for the parser
      *
      * <ul>
-     *   <li>{@link #fail(String, Scanner)} - Throws an exception for parsing failures.</li>
-     *   <li>{@link #require(String, String, Scanner)}, {@link #require(Pattern, String, Scanner)} - Checks and consumes a token if it matches a specified pattern, otherwise throws an error.</li>
-     *   <li>{@link #requireInt(String, String, Scanner)}, {@link #requireInt(Pattern, String, Scanner)} - Validates and converts a token to an integer if it matches a numerical pattern, else throws an error.</li>
-     *   <li>{@link #checkFor(String, Scanner)}, {@link #checkFor(Pattern, Scanner)} - Peeks and optionally consumes a token if it fits a given pattern, returning a boolean.</li>
+     *   <li>{@link #fail(String, Lexer)} - Throws an exception for parsing failures.</li>
+     *   <li>{@link #error(String, Lexer)} - Creates an exception for a failure at the current token.</li>
+     *   <li>{@link #require(int, String, Lexer)} - Checks and consumes a token if it is of the specified kind, otherwise throws an error.</li>
+     *   <li>{@link #requireInt(String, Lexer)} - Validates and returns a NUMBER token as an integer, else throws an error.</li>
+     *   <li>{@link #checkFor(int, Lexer)} - Peeks and optionally consumes a token if it is of the given kind, returning a boolean.</li>
      * </ul>
      */
     public static class ParserUtil {
 
         /**
-         * Report a failure in the parser.
+         * Report a failure in the parser, at the current token, which is not consumed.
          */
-        public static void fail(String message, Scanner s) {
-            StringBuilder msg = new StringBuilder(message + "\n   @ ...");
-            for (int i = 0; i < 5 && s.hasNext(); i++) {
-                msg.append(" ").append(s.next());
-            }
-            throw new ParserFailureException(msg + "...");
+        public static void fail(String message, Lexer s) {
+            String context = s.context(5);
+            throw error(message + "\n   @ ..." + (context.isEmpty() ? "" : " " + context) + "...", s);
         }
 
         /**
-         * Requires that the next token matches a pattern if it matches, it consumes
-         * and returns the token, if not, it throws an exception with an error
-         * message
+         * @return an exception for a failure at the current token
          */
-        public static String require(String p, String message, Scanner s) {
-            if (s.hasNext(p)) {
-                return s.next();
-            }
-            fail(message, s);
-            return null;
-        }
-
-        public static String require(Pattern p, String message, Scanner s) {
-            if (s.hasNext(p)) {
-                return s.next();
-            }
-            fail(message, s);
-            return null;
+        public static ParserFailureException error(String message, Lexer s) {
+            return new ParserFailureException(message, s.start(), s.line(), s.column());
         }
 
         /**
-         * Requires that the next token matches a pattern (which should only match a
-         * number) if it matches, it consumes and returns the token as an integer
-         * if not, it throws an exception with an error message
+         * Requires that the next token is of the given kind. If it is, it consumes
+         * the token, if not, it throws an exception with an error message
          */
-        public static int requireInt(String p, String message, Scanner s) {
-            if (s.hasNext(p) && s.hasNextInt()) {
-                return s.nextInt();
+        public static void require(int kind, String message, Lexer s) {
+            if (s.at(kind)) {
+                s.advance();
+                return;
             }
             fail(message, s);
-            return -1;
         }
 
-        public static int requireInt(Pattern p, String message, Scanner s) {
-            if (s.hasNext(p) && s.hasNextInt()) {
-                return s.nextInt();
+        /**
+         * Requires that the next token is a number. If it is, it consumes and
+         * returns the token as an integer, if not, it throws an exception with
+         * an error message
+         */
+        public static int requireInt(String message, Lexer s) {
+            if (s.at(NUMBER)) {
+                int value = s.intValue();
+                s.advance();
+                return value;
             }
             fail(message, s);
             return -1;
         }
 
         /**
-         * Checks whether the next token in the scanner matches the specified
-         * pattern, if so, consumes the token and return true. Otherwise, returns
-         * false without consuming anything.
+         * Checks whether the next token is of the given kind, if so, consumes
+         * the token and return true. Otherwise, returns false without consuming
+         * anything.
          */
-        public static boolean checkFor(String p, Scanner s) {
-            if (s.hasNext(p)) {
-                s.next();
-                return true;
-            }
-            return false;
-        }
-
-        public static boolean checkFor(Pattern p, Scanner s) {
-            if (s.hasNext(p)) {
-                s.next();
+        public static boolean checkFor(int kind, Lexer s) {
+            if (s.at(kind)) {
+                s.advance();
                 return true;
             }
             return false;
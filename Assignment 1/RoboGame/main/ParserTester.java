@@ -5,8 +5,9 @@ import util.exepeptions.ParserFailureException;
 
 import javax.swing.*;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.Scanner;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
 
 public class ParserTester {
 
@@ -49,18 +50,18 @@ public class ParserTester {
      */
     static void testParserOnFile(Parser parser, File file) {
         System.out.println("Parsing '" + file + "'");
-        try {
-            Scanner scan = new Scanner(file);
-            ProgramNode prog = parser.parse(scan);
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            ProgramNode prog = parser.parse(channel);
             System.out.println("Parsing completed ");
             if (prog == null) {
                 System.out.println("No program generated");
             } else {
                 System.out.println("Program: \n" + prog);
             }
-            scan.close();
-        } catch (FileNotFoundException e) {
+        } catch (NoSuchFileException e) {
             System.out.println("Robot program source file not found");
+        } catch (IOException e) {
+            System.out.println("Robot program source file could not be read: " + e);
         } catch (ParserFailureException e) {
             System.out.println("Parser error:");
             System.out.println(e.getMessage());
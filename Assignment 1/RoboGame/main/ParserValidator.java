@@ -0,0 +1,152 @@
+package main;
+
+import util.exepeptions.ParserFailureException;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Checks that every .prog file under a directory parses, for use as a CI gate.
+ * <p>
+ * Files are parsed in parallel, each worker thread with its own Parser, and each result is
+ * printed as soon as it is known, as one JSON object per line:
+ * <pre>
+ * {"file":"bots/a.prog","status":"ok"}
+ * {"file":"bots/b.prog","status":"error","errors":[{"message":"Missing semicolon","offset":42,"line":3,"column":9}]}
+ * {"file":"bots/c.prog","status":"unreadable","message":"..."}
+ * </pre>
+ * A file is parsed with error recovery, see {@link Parser#parse(CharSequence, List)}, so all its
+ * syntax errors are listed, not just the first. The offset is the character offset of the token
+ * where parsing failed, or -1 if the parser could not tell, and line and column count from 1,
+ * or are 0 if not known. Lines come in the order the files finish, not in directory order. A summary
+ * goes to standard error, and the exit status is 1 if any file failed, otherwise 0.
+ * <p>
+ * Usage: ParserValidator directory [threads]
+ */
+public class ParserValidator {
+
+    private static final ThreadLocal<Parser> PARSERS = ThreadLocal.withInitial(Parser::new);
+
+    private final PrintStream out;
+    private final AtomicInteger passed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    public ParserValidator(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Validates every .prog file under the directory, printing a line for each.
+     *
+     * @return the number of files that failed
+     */
+    public int validate(Path directory, int threads) throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.filter(f -> f.toString().endsWith(".prog") && Files.isRegularFile(f))
+                    .forEach(f -> pool.execute(() -> validate(f)));
+        } finally {
+            pool.shutdown();
+        }
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        return failed.get();
+    }
+
+    public int getPassed() {
+        return passed.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    private void validate(Path file) {
+        String line;
+        try {
+            List<ParserFailureException> errors = new ArrayList<>();
+            PARSERS.get().parse(Files.readString(file), errors);
+            if (errors.isEmpty()) {
+                line = "{\"file\":" + quote(file.toString()) + ",\"status\":\"ok\"}";
+                passed.incrementAndGet();
+            } else {
+                line = "{\"file\":" + quote(file.toString()) + ",\"status\":\"error\",\"errors\":" + errors(errors) + "}";
+                failed.incrementAndGet();
+            }
+        } catch (StackOverflowError e) {
+            line = "{\"file\":" + quote(file.toString()) + ",\"status\":\"error\",\"errors\":"
+                    + errors(List.of(new ParserFailureException("Program is nested too deeply"))) + "}";
+            failed.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            line = "{\"file\":" + quote(file.toString()) + ",\"status\":\"unreadable\",\"message\":" + quote(String.valueOf(e)) + "}";
+            failed.incrementAndGet();
+        }
+        synchronized (out) {
+            out.println(line);
+        }
+    }
+
+    /**
+     * @return the errors as a JSON array
+     */
+    private static String errors(List<ParserFailureException> errors) {
+        StringBuilder json = new StringBuilder("[");
+        for (ParserFailureException e : errors) {
+            if (json.length() > 1) json.append(',');
+            json.append("{\"message\":").append(quote(e.getMessage()))
+                    .append(",\"offset\":").append(e.getOffset())
+                    .append(",\"line\":").append(e.getLine())
+                    .append(",\"column\":").append(e.getColumn()).append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    /**
+     * @return the text as a JSON string literal
+     */
+    static String quote(String text) {
+        StringBuilder json = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: ParserValidator directory [threads]");
+            System.exit(2);
+        }
+        int threads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        ParserValidator validator = new ParserValidator(System.out);
+        long start = System.nanoTime();
+        int failed = validator.validate(Path.of(args[0]), threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.flush();
+        System.err.printf("%d files, %d passed, %d failed in %.2f s%n", validator.getPassed() + failed, validator.getPassed(), failed, seconds);
+        System.exit((failed == 0) ? 0 : 1);
+    }
+}
@@ -0,0 +1,325 @@
+package main;
+
+import nodes.RootNode;
+import nodes.interfaces.ProgramNode;
+import nodes.optimizer.ProgramOptimizer;
+import util.exepeptions.ParserFailureException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Parsed programs, so that each program is parsed and optimized once per process.
+ * <p>
+ * Programs are keyed by the SHA-256 hash of their source, so two files with the same
+ * source share one tree. Program trees are never modified once built, so the same tree
+ * can be given to any number of robots at once. The cache holds at most a fixed number
+ * of programs and evicts the least recently used one when it is full.
+ * <p>
+ * For files it also remembers the modification time and size it last saw, together with
+ * the hash of the source. If neither has changed the file is not read again; if either
+ * has, the file is first streamed through the hash alone, and only parsed if that source
+ * is not cached already, so a copied or touched file costs one read and no parse. Files
+ * are read a chunk at a time, so a large file is never held in memory whole, and never
+ * while the cache is locked.
+ * <p>
+ * A source is parsed by one thread at a time: a thread that wants a source another thread
+ * is already parsing waits for that parse instead of starting its own.
+ * <p>
+ * Sources that do not parse are not cached: every load of them throws again.
+ */
+public final class ProgramCache {
+
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private static final ProgramCache SHARED = new ProgramCache(DEFAULT_CAPACITY);
+
+    private final Map<String, Program> programs;  // by source hash, least recently used first
+    private final Map<Path, Stamp> files;         // by absolute path, least recently used first
+    private final Map<String, CompletableFuture<Program>> parsing = new HashMap<>(); // by source hash
+    private long hits, misses;
+
+    public ProgramCache(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        programs = lruMap(capacity);
+        files = lruMap(capacity);
+    }
+
+    /**
+     * @return the cache shared by everything that loads programs in this process
+     */
+    public static ProgramCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * @return the program in the file, parsed and optimized
+     * @throws IOException            if the file cannot be read
+     * @throws ParserFailureException if the file does not parse
+     */
+    public Program load(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        long modified = attributes.lastModifiedTime().toMillis();
+        long size = attributes.size();
+        synchronized (this) {
+            Stamp stamp = files.get(key);
+            if (stamp != null && stamp.modified == modified && stamp.size == size) {
+                Program program = programs.get(stamp.hash);
+                if (program != null) {
+                    hits++;
+                    return program;
+                }
+            }
+        }
+        String hash = hash(key); // the cached tree is used if the source has not changed
+        Program program = parseOnce(hash, () -> {
+            try (DigestChannel source = new DigestChannel(FileChannel.open(key))) {
+                ProgramNode parsed = new Parser().parse(source);
+                if (!source.hash().equals(hash)) throw new IOException("File changed while it was loaded: " + key);
+                return parsed;
+            }
+        });
+        synchronized (this) {
+            files.put(key, new Stamp(modified, size, hash));
+        }
+        return program;
+    }
+
+    /**
+     * @return the program with the given source, parsed and optimized
+     * @throws ParserFailureException if the source does not parse
+     */
+    public Program get(String source) {
+        try {
+            return parseOnce(hash(source), () -> new Parser().parse(source));
+        } catch (IOException e) {
+            throw new IllegalStateException("A source in memory cannot fail to read", e);
+        }
+    }
+
+    /**
+     * Returns the program with the given hash, parsing and optimizing it if it is not cached.
+     * If another thread is parsing the same source, waits for that thread and shares its
+     * program, or its failure, rather than parsing the source again.
+     *
+     * @return the program in the cache
+     */
+    private Program parseOnce(String hash, Source source) throws IOException {
+        CompletableFuture<Program> pending;
+        synchronized (this) {
+            Program cached = programs.get(hash);
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+            pending = parsing.get(hash);
+            if (pending != null) {
+                hits++; // parsed by the other thread, not this one
+            } else {
+                misses++;
+                parsing.put(hash, new CompletableFuture<>());
+            }
+        }
+        if (pending != null) return await(pending);
+
+        CompletableFuture<Program> mine;
+        try {
+            // parsed outside the lock, so one slow program does not hold up loads of others
+            ProgramNode parsed = source.parse();
+            Program program = new Program(hash, parsed, ProgramOptimizer.optimize(parsed));
+            synchronized (this) {
+                programs.put(hash, program);
+                mine = parsing.remove(hash);
+            }
+            mine.complete(program);
+            return program;
+        } catch (IOException | RuntimeException | Error e) {
+            synchronized (this) {
+                mine = parsing.remove(hash);
+            }
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static Program await(CompletableFuture<Program> pending) throws IOException {
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof RuntimeException runtime) throw runtime;
+            if (cause instanceof Error error) throw error;
+            throw e;
+        }
+    }
+
+    /**
+     * Forgets every program and file.
+     */
+    public synchronized void clear() {
+        programs.clear();
+        files.clear();
+    }
+
+    public synchronized int size() {
+        return programs.size();
+    }
+
+    /**
+     * @return the number of loads answered from the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of loads that had to parse
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private static <K, V> Map<K, V> lruMap(int capacity) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return the hash of the file, streamed through the digest a chunk at a time
+     */
+    private static String hash(Path file) throws IOException {
+        try (DigestChannel source = new DigestChannel(FileChannel.open(file))) {
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            while (source.read(buffer) >= 0) buffer.clear();
+            return source.hash();
+        }
+    }
+
+    private static String hash(String source) {
+        return HexFormat.of().formatHex(sha256().digest(source.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required of every JVM", e);
+        }
+    }
+
+    /**
+     * Hashes the bytes read through it.
+     */
+    private static final class DigestChannel implements ReadableByteChannel {
+
+        private final ReadableByteChannel channel;
+        private final MessageDigest digest = sha256();
+
+        DigestChannel(ReadableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read(ByteBuffer buffer) throws IOException {
+            int from = buffer.position();
+            int read = channel.read(buffer);
+            if (read > 0) digest.update(buffer.duplicate().limit(buffer.position()).position(from));
+            return read;
+        }
+
+        /**
+         * @return the hash of everything read so far
+         */
+        String hash() {
+            return HexFormat.of().formatHex(digest.digest());
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Parses a source that is not cached.
+     */
+    @FunctionalInterface
+    private interface Source {
+        ProgramNode parse() throws IOException;
+    }
+
+    /**
+     * When a file was last seen, and the hash of its source at that time.
+     */
+    private record Stamp(long modified, long size, String hash) {
+    }
+
+    /**
+     * A parsed program, as parsed and after optimization.
+     */
+    public static final class Program {
+
+        private final String hash;
+        private final ProgramNode parsed;
+        private final ProgramNode optimized;
+
+        private Program(String hash, ProgramNode parsed, ProgramNode optimized) {
+            this.hash = hash;
+            this.parsed = parsed;
+            this.optimized = optimized;
+        }
+
+        /**
+         * @return the SHA-256 hash of the source, in hex
+         */
+        public String getHash() {
+            return hash;
+        }
+
+        /**
+         * @return the tree as parsed
+         */
+        public ProgramNode getParsed() {
+            return parsed;
+        }
+
+        /**
+         * @return the tree to execute
+         */
+        public ProgramNode getOptimized() {
+            return optimized;
+        }
+
+        /**
+         * @return whether the source has no statements, such as a blank file
+         */
+        public boolean isEmpty() {
+            return parsed instanceof RootNode root && root.getStatements().isEmpty();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package main;
+
+import util.exepeptions.ParserFailureException;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Document;
+import javax.swing.text.Highlighter;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * A window for editing a robot program, which checks the program on every keystroke.
+ * <p>
+ * Each change to the text is passed to an {@link IncrementalParser}, so only the edited
+ * statements are parsed again. The syntax errors are listed below the text, with their lines
+ * highlighted; clicking an error moves the caret to it.
+ * <p>
+ * Usage: ProgramEditor [program]
+ */
+@SuppressWarnings("serial")
+public class ProgramEditor extends JFrame {
+
+    private static final Highlighter.HighlightPainter ERROR_PAINTER = new DefaultHighlighter.DefaultHighlightPainter(new Color(255, 200, 200));
+
+    private final File file;
+    private final JTextArea text = new JTextArea(30, 70);
+    private final DefaultListModel<String> errorList = new DefaultListModel<>();
+    private final JLabel status = new JLabel(" ");
+    private final IncrementalParser parser = new IncrementalParser();
+    private List<ParserFailureException> errors = List.of();
+
+    /**
+     * @param file the program to edit, which need not exist yet
+     */
+    public ProgramEditor(File file) throws IOException {
+        super("Edit " + file.getName());
+        this.file = file;
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+
+        text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 13));
+        text.setTabSize(4);
+        text.setText(file.exists() ? Files.readString(file.toPath()) : "");
+        text.setCaretPosition(0);
+        parser.setText(text.getText());
+        text.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                try {
+                    edited(e.getOffset(), 0, e.getDocument().getText(e.getOffset(), e.getLength()));
+                } catch (BadLocationException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                edited(e.getOffset(), e.getLength(), "");
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                // attributes only
+            }
+        });
+
+        JList<String> errorView = new JList<>(errorList);
+        errorView.setVisibleRowCount(6);
+        errorView.addListSelectionListener(e -> {
+            int index = errorView.getSelectedIndex();
+            if (!e.getValueIsAdjusting() && index >= 0 && index < errors.size() && errors.get(index).getOffset() >= 0) {
+                text.setCaretPosition(Math.min(errors.get(index).getOffset(), text.getDocument().getLength()));
+                text.requestFocusInWindow();
+            }
+        });
+
+        JPanel south = new JPanel(new BorderLayout());
+        south.add(new JScrollPane(errorView), BorderLayout.CENTER);
+        south.add(status, BorderLayout.SOUTH);
+        add(new JScrollPane(text), BorderLayout.CENTER);
+        add(south, BorderLayout.SOUTH);
+
+        JMenuBar menu = new JMenuBar();
+        JMenuItem save = new JMenuItem("Save");
+        save.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_S, InputEvent.CTRL_DOWN_MASK));
+        save.addActionListener((ActionEvent e) -> save());
+        menu.add(save);
+        setJMenuBar(menu);
+
+        showErrors(0);
+        pack();
+        setLocationRelativeTo(null);
+    }
+
+    private void edited(int offset, int removed, String inserted) {
+        long start = System.nanoTime();
+        parser.edit(offset, removed, inserted);
+        showErrors(System.nanoTime() - start);
+    }
+
+    private void showErrors(long nanos) {
+        errors = parser.getErrors();
+        errorList.clear();
+        Highlighter highlighter = text.getHighlighter();
+        highlighter.removeAllHighlights();
+        Document document = text.getDocument();
+        for (ParserFailureException e : errors) {
+            errorList.addElement(((e.getLine() > 0) ? e.getLine() + ":" + e.getColumn() + "  " : "") + e.getMessage().replaceAll("\n\\s*", " "));
+            if (e.getLine() > 0) {
+                try {
+                    int line = Math.min(e.getLine() - 1, text.getLineCount() - 1);
+                    highlighter.addHighlight(text.getLineStartOffset(line), Math.min(text.getLineEndOffset(line), document.getLength()), ERROR_PAINTER);
+                } catch (BadLocationException ex) {
+                    // the text changed again, the next edit redraws
+                }
+            }
+        }
+        status.setText(String.format("%s  (checked in %.0f us, %d statements reused)",
+                errors.isEmpty() ? "No errors" : errors.size() + ((errors.size() == 1) ? " error" : " errors"), nanos / 1e3, parser.getReused()));
+    }
+
+    private void save() {
+        try {
+            Files.writeString(file.toPath(), text.getText());
+            status.setText("Saved " + file.getName());
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Could not save " + file + ": " + e.getMessage());
+        }
+    }
+
+    public static void main(String[] args) {
+        SwingUtilities.invokeLater(() -> {
+            File file;
+            if (args.length > 0) {
+                file = new File(args[0]);
+            } else {
+                JFileChooser chooser = new JFileChooser(RoboGame.CODE_DIRECTORY);
+                if (chooser.showOpenDialog(null) != JFileChooser.APPROVE_OPTION) return;
+                file = chooser.getSelectedFile();
+            }
+            try {
+                ProgramEditor editor = new ProgramEditor(file);
+                editor.setDefaultCloseOperation(EXIT_ON_CLOSE);
+                editor.setVisible(true);
+            } catch (IOException e) {
+                System.out.println("Could not read " + file + ": " + e.getMessage());
+            }
+        });
+    }
+}
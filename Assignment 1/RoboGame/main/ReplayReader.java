@@ -0,0 +1,111 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a replay file written by {@link ReplayWriter}.
+ * <p>
+ * The file is memory-mapped and every record has the same width, so reading any turn
+ * is a constant-time lookup into the mapping: no turn before it is read, and nothing
+ * is copied onto the heap. Replays up to 2GB (about 50 million turns) can be mapped.
+ */
+public class ReplayReader {
+
+    private final MappedByteBuffer map;
+    private final int turns;
+
+    public ReplayReader(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("Replay too large to map: " + file);
+            if (size < ReplayWriter.HEADER_BYTES) throw new IOException("Not a replay file: " + file);
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        map.order(ByteOrder.BIG_ENDIAN);
+        if (map.getInt(0) != ReplayWriter.MAGIC) throw new IOException("Not a replay file: " + file);
+        if (map.getInt(4) != ReplayWriter.VERSION) throw new IOException("Unsupported replay version " + map.getInt(4) + ": " + file);
+        if (map.getInt(8) != ReplayWriter.RECORD_BYTES || map.getInt(12) != World.SIZE) {
+            throw new IOException("Replay was recorded with a different record layout: " + file);
+        }
+        turns = (map.capacity() - ReplayWriter.HEADER_BYTES) / ReplayWriter.RECORD_BYTES;
+    }
+
+    /**
+     * @return the number of recorded turns, including the starting state as turn 0
+     */
+    public int getTurns() {
+        return turns;
+    }
+
+    /**
+     * Copies the fuel board of the turn into the given array of World.FUEL_WORDS longs.
+     */
+    public void copyFuel(int turn, long[] board) {
+        int offset = record(turn);
+        for (int i = 0; i < World.FUEL_WORDS; i++) {
+            board[i] = map.getLong(offset + i * Long.BYTES);
+        }
+    }
+
+    public int getX(int turn, int robot) {
+        return map.get(robot(turn, robot));
+    }
+
+    public int getY(int turn, int robot) {
+        return map.get(robot(turn, robot) + 1);
+    }
+
+    /**
+     * @return 0 north, 1 west, 2 south or 3 east
+     */
+    public int getDirection(int turn, int robot) {
+        return map.get(robot(turn, robot) + 2);
+    }
+
+    public boolean isShielded(int turn, int robot) {
+        return (map.get(robot(turn, robot) + 3) & 1) != 0;
+    }
+
+    public boolean isDead(int turn, int robot) {
+        return (map.get(robot(turn, robot) + 3) & 2) != 0;
+    }
+
+    public int getFuel(int turn, int robot) {
+        return map.getShort(robot(turn, robot) + 4);
+    }
+
+    /**
+     * @return the Robot.ACTION_ constant of the action committed in the turn, 0 for the starting state
+     */
+    public int getAction(int turn, int robot) {
+        return map.get(robot(turn, robot) + 6);
+    }
+
+    /**
+     * Shows the recorded turn in the world: its fuel and both robots, animating towards the next turn.
+     */
+    void show(int turn, World world, long[] fuel) {
+        copyFuel(turn, fuel);
+        world.setFuel(fuel);
+        int next = Math.min(turn + 1, turns - 1);
+        for (int id = 1; id <= 2; id++) {
+            int action = (next == turn) ? 0 : getAction(next, id);
+            world.getRobot(id).showReplayState(getX(turn, id), getY(turn, id), getDirection(turn, id), getFuel(turn, id),
+                    isShielded(turn, id), getX(next, id), getY(next, id), getFuel(next, id), action);
+        }
+    }
+
+    private int record(int turn) {
+        if (turn < 0 || turn >= turns) throw new IndexOutOfBoundsException("Turn " + turn + " of " + turns);
+        return ReplayWriter.HEADER_BYTES + turn * ReplayWriter.RECORD_BYTES;
+    }
+
+    private int robot(int turn, int robot) {
+        return record(turn) + World.FUEL_WORDS * Long.BYTES + (robot - 1) * ReplayWriter.ROBOT_BYTES;
+    }
+}
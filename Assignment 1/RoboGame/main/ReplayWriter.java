@@ -0,0 +1,74 @@
+package main;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records every committed turn of a World into a replay file, for {@link ReplayReader}.
+ * <p>
+ * The file is a 16 byte header followed by one fixed-width record per turn, so that
+ * turn n always starts at HEADER_BYTES + n * RECORD_BYTES. Record 0 is the world as it
+ * starts, record n the world after n updates. All values are big-endian.
+ * <pre>
+ * header: int MAGIC, int VERSION, int RECORD_BYTES, int World.SIZE
+ * record: long[World.FUEL_WORDS] fuel board, then ROBOT_BYTES for the red and the blue robot
+ * robot:  byte x, byte y, byte direction (0 north, 1 west, 2 south, 3 east),
+ *         byte flags (1 shielded, 2 dead), short fuel, byte action of the turn, byte unused
+ * </pre>
+ */
+public class ReplayWriter implements AutoCloseable {
+
+    public static final int MAGIC = 0x52475250; // "RGRP"
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 16;
+    public static final int ROBOT_BYTES = 8;
+    public static final int RECORD_BYTES = World.FUEL_WORDS * Long.BYTES + 2 * ROBOT_BYTES;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_BYTES * 1024).order(ByteOrder.BIG_ENDIAN);
+    private final long[] fuel = new long[World.FUEL_WORDS];
+
+    public ReplayWriter(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(RECORD_BYTES).putInt(World.SIZE);
+    }
+
+    /**
+     * Appends the committed state of the world as the next record.
+     */
+    public void record(World world) {
+        if (buffer.remaining() < RECORD_BYTES) flush();
+        world.copyFuel(fuel);
+        for (long word : fuel) {
+            buffer.putLong(word);
+        }
+        world.getRobot(1).writeReplayState(buffer);
+        world.getRobot(2).writeReplayState(buffer);
+    }
+
+    private void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write replay", e);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
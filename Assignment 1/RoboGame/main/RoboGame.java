@@ -5,6 +5,7 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
+import java.io.IOException;
 
 @SuppressWarnings("serial")
 public class RoboGame extends JFrame {
@@ -17,7 +18,7 @@ public class RoboGame extends JFrame {
      */
     public static String ASSET_DIRECTORY ="Assignment 1/RoboGame/assets/";     // the folder containing the images for the robot
     public static String CODE_DIRECTORY = "Assignment 1/RoboGame/programs/";   // the folder containing the robot programs
-    public static boolean debugDisplay = true;
+    public static volatile boolean debugDisplay = true; // read by the robot threads, see DebugLog
 
     /**
      * Set up the interface for the game
@@ -63,6 +64,15 @@ public class RoboGame extends JFrame {
                     worldComp.repaint();
                 }
             });
+        makeMenuItem("Edit Program...", loadMenu, (ActionEvent e) -> {
+                File code = getCodeFile();
+                if (code == null) return;
+                try {
+                    new ProgramEditor(code).setVisible(true);
+                } catch (IOException ex) {
+                    JOptionPane.showMessageDialog(this, ex.getMessage());
+                }
+            });
         final JMenuItem start = makeMenuItem ("Start",menu, null);
         start.addActionListener((ActionEvent e) -> {   // acts on the JMenuItem itself...
                 load1.setEnabled(false);
@@ -85,7 +95,21 @@ public class RoboGame extends JFrame {
                 start.setEnabled(true);
             });
 
-        final JMenuItem debugOn = makeMenuItem("On", debugMenu,(ActionEvent e) -> {debugDisplay = true;});
+        final JMenuItem replay = makeMenuItem("Replay", menu, (ActionEvent e) -> {
+                JFileChooser chooser = new JFileChooser(".");
+                if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+                try {
+                    worldComp.startReplay(new ReplayReader(chooser.getSelectedFile().toPath()));
+                    load1.setEnabled(false);
+                    load2.setEnabled(false);
+                    start.setEnabled(false);
+                } catch (IOException ex) {
+                    JOptionPane.showMessageDialog(this, ex.getMessage());
+                }
+            });
+
+        final JMenuItem debugOn = makeMenuItem("On", debugMenu,(ActionEvent e) -> {debugDisplay = true; DebugLog.setLevel(DebugLog.Level.SENSORS);});
+        final JMenuItem debugActions = makeMenuItem("Actions only", debugMenu,(ActionEvent e) -> {debugDisplay = true; DebugLog.setLevel(DebugLog.Level.ACTIONS);});
         final JMenuItem debugOff = makeMenuItem("Off", debugMenu,(ActionEvent e) -> {debugDisplay = false;});
         JMenuItem quit = makeMenuItem("Quit", menu,(ActionEvent e) -> {System.exit(0);});
 
@@ -10,10 +10,13 @@ import java.awt.geom.Arc2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Robot {
 
@@ -26,11 +29,20 @@ public class Robot {
 
     public static final int ACTION_MOVE = 1, ACTION_TURN_LEFT = 2, ACTION_TURN_RIGHT = 3, ACTION_TURN_AROUND = 4, ACTION_TAKE_FUEL = 5, ACTION_WAIT = 6, INFINITY = Integer.MAX_VALUE;
     private static final int FUEL_IDLE = 3, FUEL_MOVE = 6, FUEL_TURN = 5, FUEL_SHIELD = 15;
+    private static final int STALL_LIMIT = 10000; // sensor calls or loop passes without an action before a MatchEngine turn passes
     private final World world;
-    private Point otherRobotPos;
-    private List<Point> barrels = new ArrayList<Point>();
+    // Sensor readings, taken when the world commits a turn
+    private boolean hasOther;
+    private int otherLR, otherFB;                       // relative position of the other robot
+    private int barrelCount;
+    private final long[] barrelBoard = new long[World.FUEL_WORDS];  // fuel board of the barrels
+    private final int[] barrelLR = new int[World.SIZE * World.SIZE]; // relative positions, closest first
+    private final int[] barrelFB = new int[World.SIZE * World.SIZE];
+    private boolean barrelsSorted;                      // whether barrelLR/barrelFB are up to date
     private ProgramNode program;
-    private boolean shield, dead, finished, cancelled;
+    private final ExecutionContext context = new ExecutionContext(); // variables of the running program
+    private boolean shield, dead, finished;
+    private volatile boolean cancelled; // read by a program that loops without calling the robot
 
     // -------------
     // Robot Sensors
@@ -39,66 +51,46 @@ public class Robot {
     private int x, y, targetX, targetY;
     private DIRECTION dir, targetDir;
     //	private int x, y, dir, targetX, targetY, targetDir;
-    private int currentAction;
+    private volatile int currentAction;
+    private final ReentrantLock turnLock = new ReentrantLock();
+    private final Condition turnCommitted = turnLock.newCondition(); // signalled by updatePending()
+    private volatile boolean parked; // waiting on turnCommitted, set and cleared under turnLock
     private final String colour;
+    private final int debugId; // 1 for red, 2 for blue, see DebugLog
     private BufferedImage robotImage1, robotImage2, shieldImage;
+    private boolean imagesLoaded; // tried once, whether or not the assets were found
     private boolean noWait = false;
-    private final ArrayList<String> history = new ArrayList<>();
+    private Phaser turnPhaser; // set when a MatchEngine drives the turns instead of the GUI timer
+    private boolean stepped;   // set when a SteppedMatch drives the turns: actions return at once
+    private boolean stateDue;  // a stepped action has been submitted, see resumeStepped()
+    private boolean actionDue; // the submitted action is left to World.resolveActions()
+    private boolean siphonDue; // the submitted action takes fuel where there is no barrel, see siphon()
+    private int callsSinceAction;
+    private int committedAction;                         // the action of the last committed turn
+    private long[] history = new long[64];               // states recorded by readState(), see packState()
+    private int historySize;
 
     public Robot(World world, int x, int y, String colour, boolean noWait) {
         this.world = world;
         this.x = x;
         this.y = y;
         this.colour = colour;
+        this.debugId = colour.equals("blue") ? 2 : 1;
         this.noWait = noWait;
         targetX = x;
         targetY = y;
         dir = (y < World.SIZE / 2) ? DIRECTION.SOUTH : DIRECTION.NORTH;
         targetDir = dir;
         targetFuel = fuel;
-        try {
-            robotImage1 = ImageIO.read(new File(RoboGame.ASSET_DIRECTORY + "robot_" + colour + "_1.png"));
-            robotImage2 = ImageIO.read(new File(RoboGame.ASSET_DIRECTORY + "robot_" + colour + "_2.png"));
-            shieldImage = ImageIO.read(new File(RoboGame.ASSET_DIRECTORY + "shield.png"));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
     }
 
     /**
      * Move forward one step.
      */
     public void move() {
-        debug("move");
+        debug(DebugLog.MOVE, 0, 0);
         currentAction = ACTION_MOVE;
-        switch (dir) {
-            case NORTH -> {
-                targetY -= 1;
-            }
-            case WEST -> {
-                targetX -= 1;
-            }
-            case SOUTH -> {
-                targetY += 1;
-            }
-            case EAST -> {
-                targetX += 1;
-            }
-        }
-        targetX = Math.max(0, targetX);
-        targetY = Math.max(0, targetY);
-        targetX = Math.min(11, targetX);
-        targetY = Math.min(11, targetY);
-        Robot other = world.getOtherRobot(this);
-        if (other != null) {
-            if (other.targetX == targetX && other.targetY == targetY) {
-                // not allowed to move
-                targetX = x;
-                targetY = y;
-            }
-        }
         processFuelAndBlock();
-        readState();
     }
 
     // =======================================================
@@ -110,7 +102,7 @@ public class Robot {
      * Turn 90 degrees to the left
      */
     public void turnLeft() {
-        debug("turnL");
+        debug(DebugLog.TURN_L, 0, 0);
         currentAction = ACTION_TURN_LEFT;
         switch (dir) {
             case NORTH -> {
@@ -127,14 +119,13 @@ public class Robot {
             }
         }
         processFuelAndBlock();
-        readState();
     }
 
     /**
      * Turn 90 degrees to the right
      */
     public void turnRight() {
-        debug("turnR");
+        debug(DebugLog.TURN_R, 0, 0);
         currentAction = ACTION_TURN_RIGHT;
         switch (dir) {
             case NORTH -> {
@@ -151,14 +142,13 @@ public class Robot {
             }
         }
         processFuelAndBlock();
-        readState();
     }
 
     /**
      * Turn 180 degrees.
      */
     public void turnAround() {
-        debug("turnAround");
+        debug(DebugLog.TURN_AROUND, 0, 0);
         currentAction = ACTION_TURN_AROUND;
         switch (dir) {
             case NORTH -> {
@@ -175,7 +165,6 @@ public class Robot {
             }
         }
         processFuelAndBlock();
-        readState();
     }
 
     /**
@@ -183,7 +172,8 @@ public class Robot {
      * cannot steal fuel, but this robot will use up fuel faster.
      */
     public void setShield(boolean shield) {
-        debug("shield " + (shield ? "on" : "off"));
+        debug(DebugLog.SHIELD, shield ? 1 : 0, 0);
+        checkStalled();
         this.shield = shield;
         readState();
     }
@@ -192,20 +182,18 @@ public class Robot {
      * Take fuel barrel or siphon fuel from other robot.
      */
     public void takeFuel() {
-        debug("takeFuel");
+        debug(DebugLog.TAKE_FUEL, 0, 0);
         currentAction = ACTION_TAKE_FUEL;
         processFuelAndBlock();
-        readState();
     }
 
     /**
      * Do nothing and wait.
      */
     public void idleWait() {
-        debug("wait");
+        debug(DebugLog.WAIT, 0, 0);
         currentAction = ACTION_WAIT;
         processFuelAndBlock();
-        readState();
     }
 
     /**
@@ -216,6 +204,7 @@ public class Robot {
      */
     public int getDistanceToWall() {
         if (cancelled) throw new RobotInterruptedException();
+        checkStalled();
         switch (dir) {
             case NORTH -> {
                 return y;
@@ -242,13 +231,10 @@ public class Robot {
      */
     public int getOpponentLR() {
         if (cancelled) throw new RobotInterruptedException();
-        if (otherRobotPos == null) {
-            debug("oppLR=INFINTY");
-            return INFINITY;
-        } else {
-            debug("oppLR=" + otherRobotPos.x);
-            return otherRobotPos.x;
-        }
+        checkStalled();
+        int val = hasOther ? otherLR : INFINITY;
+        debug(DebugLog.OPP_LR, val, 0);
+        return val;
     }
 
     /**
@@ -260,13 +246,10 @@ public class Robot {
      */
     public int getOpponentFB() {
         if (cancelled) throw new RobotInterruptedException();
-        if (otherRobotPos == null) {
-            debug("oppFB=INFINTY");
-            return INFINITY;
-        } else {
-            debug("oppFB=" + otherRobotPos.y);
-            return otherRobotPos.y;
-        }
+        checkStalled();
+        int val = hasOther ? otherFB : INFINITY;
+        debug(DebugLog.OPP_FB, val, 0);
+        return val;
     }
 
     /**
@@ -274,8 +257,9 @@ public class Robot {
      */
     public int numBarrels() {
         if (cancelled) throw new RobotInterruptedException();
-        debug("numBarrels = " + barrels.size());
-        return barrels.size();
+        checkStalled();
+        debug(DebugLog.NUM_BARRELS, barrelCount, 0);
+        return barrelCount;
     }
 
     /**
@@ -287,6 +271,7 @@ public class Robot {
      */
     public int getClosestBarrelLR() {
         if (cancelled) throw new RobotInterruptedException();
+        checkStalled();
         return getBarrelLR(0);
     }
 
@@ -299,6 +284,7 @@ public class Robot {
      */
     public int getClosestBarrelFB() {
         if (cancelled) throw new RobotInterruptedException();
+        checkStalled();
         return getBarrelFB(0);
     }
 
@@ -311,8 +297,9 @@ public class Robot {
      */
     public int getBarrelLR(int n) {
         if (cancelled) throw new RobotInterruptedException();
-        int val = (n >= barrels.size()) ? INFINITY : barrels.get(n).x;
-        debug(((n == 0) ? "" : (n + "th")) + "closestBarrelLR = " + ((val == INFINITY) ? "INFINITY" : "" + val));
+        checkStalled();
+        int val = (n >= barrelCount) ? INFINITY : sortedBarrels()[n];
+        debug(DebugLog.BARREL_LR, val, n);
         return val;
     }
 
@@ -325,8 +312,10 @@ public class Robot {
      */
     public int getBarrelFB(int n) {
         if (cancelled) throw new RobotInterruptedException();
-        int val = (n >= barrels.size()) ? INFINITY : barrels.get(n).y;
-        debug(((n == 0) ? "" : (n + "th")) + "closestBarrelFB = " + ((val == INFINITY) ? "INFINITY" : "" + val));
+        checkStalled();
+        if (n < barrelCount) sortedBarrels();
+        int val = (n >= barrelCount) ? INFINITY : barrelFB[n];
+        debug(DebugLog.BARREL_FB, val, n);
         return val;
     }
 
@@ -337,7 +326,8 @@ public class Robot {
      */
     public int getFuel() {
         if (cancelled) throw new RobotInterruptedException();
-        debug("fuel=" + fuel);
+        checkStalled();
+        debug(DebugLog.FUEL_LEFT, fuel, 0);
         return fuel;
     }
 
@@ -346,7 +336,8 @@ public class Robot {
      */
     public boolean isShieldOn() {
         if (cancelled) throw new RobotInterruptedException();
-        debug(shield ? "shield is on" : "shield is off");
+        checkStalled();
+        debug(DebugLog.SHIELD_STATE, shield ? 1 : 0, 0);
         return shield;
     }
 
@@ -358,6 +349,13 @@ public class Robot {
         program = prog;
     }
 
+    /**
+     * @return the variables of the program this robot is running
+     */
+    public ExecutionContext getContext() {
+        return context;
+    }
+
     /**
      * Start this robot running. If it has a valid program,, then executes the
      * program, passing in the robot. Otherwise, calls the default program.
@@ -399,6 +397,7 @@ public class Robot {
      * @param time
      */
     public void draw(Graphics2D g2d, double time) {
+        if (!imagesLoaded) loadImages();
         double x = this.x * (1 - time) + targetX * time;
         double y = this.y * (1 - time) + targetY * time;
         x = x * WorldComponent.GRID_SIZE + WorldComponent.GRID_SIZE / 2d;
@@ -417,19 +416,22 @@ public class Robot {
             }
         }
 
-        AffineTransform trans = new AffineTransform();
-        trans.translate(x, y);
-        trans.rotate(angle);
-        trans.translate(-robotImage1.getWidth() / 2d, -robotImage1.getHeight() / 2d);
+        // without its sprites, a robot is drawn as its fuel indicator alone
+        if (robotImage1 != null && robotImage2 != null) {
+            AffineTransform trans = new AffineTransform();
+            trans.translate(x, y);
+            trans.rotate(angle);
+            trans.translate(-robotImage1.getWidth() / 2d, -robotImage1.getHeight() / 2d);
 
-        if (((int) (time * 10)) % 2 == 0 && currentAction < ACTION_TAKE_FUEL && currentAction > 0) {
-            g2d.drawImage(robotImage2, trans, null);
-        } else {
-            g2d.drawImage(robotImage1, trans, null);
+            if (((int) (time * 10)) % 2 == 0 && currentAction < ACTION_TAKE_FUEL && currentAction > 0) {
+                g2d.drawImage(robotImage2, trans, null);
+            } else {
+                g2d.drawImage(robotImage1, trans, null);
+            }
         }
 
-        if (shield) {
-            trans = new AffineTransform();
+        if (shield && shieldImage != null) {
+            AffineTransform trans = new AffineTransform();
             trans.translate(x - 25, y - 25);
             g2d.drawImage(shieldImage, trans, null);
         }
@@ -448,29 +450,225 @@ public class Robot {
         return dead;
     }
 
-    private Point getOtherRobotPosition() {
-        Robot other = world.getOtherRobot(this);
-        return (other != null) ? toRelative(new Point(other.x, other.y)) : null;
+    /**
+     * Loads the sprites on first draw, so headless robots never touch the asset directory.
+     * Missing sprites are reported once and not looked for again on later frames.
+     */
+    private void loadImages() {
+        imagesLoaded = true;
+        try {
+            robotImage1 = ImageIO.read(new File(RoboGame.ASSET_DIRECTORY + "robot_" + colour + "_1.png"));
+            robotImage2 = ImageIO.read(new File(RoboGame.ASSET_DIRECTORY + "robot_" + colour + "_2.png"));
+            shieldImage = ImageIO.read(new File(RoboGame.ASSET_DIRECTORY + "shield.png"));
+        } catch (IOException e) {
+            System.out.println("Robot images could not be loaded from " + RoboGame.ASSET_DIRECTORY + ": " + e.getMessage());
+        }
     }
 
-    private Point toRelative(Point p) {
-        int rx = p.x;
-        int ry = p.y;
-        switch (dir) {
-            case NORTH -> {
-                return new Point(rx - x, y - ry);
-            }
-            case SOUTH -> {
-                return new Point(x - rx, ry - y);
+    /**
+     * Called by the MatchEngine only, which has no draw() to notice an empty tank.
+     * Mirrors the check in draw(): the robot is dead once its fuel gauge would
+     * reach zero, i.e. when the pending action would take it below zero or the
+     * committed fuel is already zero.
+     *
+     * @return whether the robot is now dead
+     */
+    boolean checkOutOfFuel() {
+        if (fuel <= 0 || targetFuel < 0) dead = true;
+        return dead;
+    }
+
+    /**
+     * Called by the interpreter on every pass of a loop. A program that loops without acting
+     * or reading a sensor, such as {@code while (eq(1, 1)) { $a = add($a, 1); }}, still sits
+     * its MatchEngine turns out, see {@link #checkStalled()}, and still stops once the robot
+     * is cancelled.
+     */
+    public void onLoopPass() {
+        if (cancelled) throw new RobotInterruptedException();
+        checkStalled();
+    }
+
+    /**
+     * Under a MatchEngine no timer commits the turn of a robot that keeps reading its
+     * sensors or looping without acting, so after STALL_LIMIT such calls the robot sits the
+     * turn out, as it would in the GUI, and then carries on with fresh readings.
+     */
+    private void checkStalled() {
+        if (turnPhaser != null && ++callsSinceAction > STALL_LIMIT) {
+            callsSinceAction = 0;
+            turnPhaser.arriveAndAwaitAdvance();
+            turnPhaser.arriveAndAwaitAdvance();
+        }
+    }
+
+    /**
+     * Hands turn synchronisation over to a MatchEngine. Must be called before the
+     * robot is started.
+     */
+    void setTurnPhaser(Phaser turnPhaser) {
+        this.turnPhaser = turnPhaser;
+    }
+
+    /**
+     * Lets a SteppedMatch drive this robot: actions are submitted without waiting for the
+     * turn to be committed. Must be called before the robot acts.
+     */
+    void setStepped(boolean stepped) {
+        this.stepped = stepped;
+    }
+
+    /**
+     * Called by a SteppedMatch when a stepped robot carries on after the world has committed
+     * its action: records the new state, as a robot thread does when it wakes up.
+     */
+    void resumeStepped() {
+        if (stateDue) {
+            stateDue = false;
+            readState();
+        }
+    }
+
+    /**
+     * Called by World.resolveActions() only: resolves the action submitted under a MatchEngine
+     * or a SteppedMatch, if there is one.
+     */
+    void resolveSubmitted() {
+        if (actionDue) {
+            actionDue = false;
+            resolveAction();
+        }
+    }
+
+    /**
+     * Called by World.resolveActions() only, once both robots' actions are resolved, and by
+     * this robot itself when it resolves its action at once.
+     */
+    void resolveSiphon() {
+        if (siphonDue) {
+            siphonDue = false;
+            siphon();
+        }
+    }
+
+    /**
+     * @return the program given to this robot, or null if it runs the default program
+     */
+    ProgramNode getProgram() {
+        return program;
+    }
+
+    /**
+     * @return the committed fuel of this robot, without the debug output of {@link #getFuel()}
+     */
+    int getFuelLevel() {
+        return fuel;
+    }
+
+    /**
+     * @return the committed state of this robot, packed as in a {@link WorldState}
+     */
+    int packState() {
+        return WorldState.robot(x, y, dir.ordinal(), fuel, shield, dead);
+    }
+
+    /**
+     * @return the states recorded by {@link #readState()} so far. The states are kept
+     * packed and only formatted when an element of the list is read.
+     */
+    public List<String> getHistory() {
+        long[] states = Arrays.copyOf(history, historySize);
+        return new AbstractList<>() {
+            @Override
+            public String get(int index) {
+                return formatState(states[index]);
             }
-            case WEST -> {
-                return new Point(y - ry, x - rx);
+
+            @Override
+            public int size() {
+                return states.length;
             }
-            case EAST -> {
-                return new Point(ry - y, rx - x);
+        };
+    }
+
+    /**
+     * Writes the committed state of this robot as a ReplayWriter.ROBOT_BYTES record,
+     * see {@link ReplayWriter} for the layout.
+     */
+    void writeReplayState(ByteBuffer out) {
+        out.put((byte) x).put((byte) y).put((byte) dir.ordinal());
+        out.put((byte) ((shield ? 1 : 0) | (dead ? 2 : 0)));
+        out.putShort((short) fuel);
+        out.put((byte) committedAction).put((byte) 0);
+    }
+
+    /**
+     * Called by replay playback only: shows the robot in a recorded state, animating
+     * towards the position and fuel of the next recorded turn with the given action.
+     */
+    void showReplayState(int x, int y, int dir, int fuel, boolean shield, int nextX, int nextY, int nextFuel, int nextAction) {
+        this.x = x;
+        this.y = y;
+        this.dir = DIRECTION.values()[dir];
+        this.fuel = fuel;
+        this.shield = shield;
+        targetX = nextX;
+        targetY = nextY;
+        targetDir = this.dir;
+        targetFuel = nextFuel;
+        currentAction = nextAction;
+    }
+
+    /**
+     * @return the left-right offset of the absolute position (rx, ry) from this robot
+     */
+    private int relativeLR(int rx, int ry) {
+        return switch (dir) {
+            case NORTH -> rx - x;
+            case SOUTH -> x - rx;
+            case WEST -> y - ry;
+            case EAST -> ry - y;
+        };
+    }
+
+    /**
+     * @return the front-back offset of the absolute position (rx, ry) from this robot
+     */
+    private int relativeFB(int rx, int ry) {
+        return switch (dir) {
+            case NORTH -> y - ry;
+            case SOUTH -> ry - y;
+            case WEST -> x - rx;
+            case EAST -> rx - x;
+        };
+    }
+
+    /**
+     * Converts the barrels seen at the last commit to relative positions, closest first,
+     * the first time a barrel sensor is read after the commit. The sort is stable, so
+     * barrels at the same distance keep their row order on the board.
+     *
+     * @return the left-right offsets of the barrels; barrelFB is up to date as well
+     */
+    private int[] sortedBarrels() {
+        if (!barrelsSorted) {
+            int i = 0;
+            for (int cell = World.nextFuel(barrelBoard, 0); cell >= 0; cell = World.nextFuel(barrelBoard, cell + 1), i++) {
+                int lr = relativeLR(cell % World.SIZE, cell / World.SIZE);
+                int fb = relativeFB(cell % World.SIZE, cell / World.SIZE);
+                int d = Math.abs(lr) + Math.abs(fb);
+                int j = i;
+                while (j > 0 && Math.abs(barrelLR[j - 1]) + Math.abs(barrelFB[j - 1]) > d) {
+                    barrelLR[j] = barrelLR[j - 1];
+                    barrelFB[j] = barrelFB[j - 1];
+                    j--;
+                }
+                barrelLR[j] = lr;
+                barrelFB[j] = fb;
             }
+            barrelsSorted = true;
         }
-        return null;
+        return barrelLR;
     }
 
     private double getAngle(DIRECTION direction) {
@@ -491,9 +689,46 @@ public class Robot {
         return 0;
     }
 
+    /**
+     * Works out where the submitted action takes this robot and the fuel it will have left.
+     * Taking fuel where there is no barrel is finished by siphon().
+     */
+    private void resolveAction() {
+        if (currentAction == ACTION_MOVE) {
+            switch (dir) {
+                case NORTH -> {
+                    targetY -= 1;
+                }
+                case WEST -> {
+                    targetX -= 1;
+                }
+                case SOUTH -> {
+                    targetY += 1;
+                }
+                case EAST -> {
+                    targetX += 1;
+                }
+            }
+            targetX = Math.max(0, targetX);
+            targetY = Math.max(0, targetY);
+            targetX = Math.min(11, targetX);
+            targetY = Math.min(11, targetY);
+            Robot other = world.getOtherRobot(this);
+            if (other != null) {
+                if (other.targetX == targetX && other.targetY == targetY) {
+                    // not allowed to move
+                    targetX = x;
+                    targetY = y;
+                }
+            }
+        }
+        processFuel();
+    }
+
     private void processFuel() {
         // use fuel
         targetFuel = fuel;
+        siphonDue = false;
         switch (currentAction) {
             case ACTION_MOVE -> {
                 targetFuel -= FUEL_MOVE;
@@ -511,44 +746,74 @@ public class Robot {
                 targetFuel -= FUEL_IDLE;
             }
             case ACTION_TAKE_FUEL -> {
-                if (world.getAvailableFuel().contains(new Point(x, y))) {
-                    world.getAvailableFuel().remove(new Point(x, y));
+                if (world.takeFuel(x, y)) {
                     targetFuel = 100;
-                    return;
-                } else {// try to siphon fuel
-                    Robot other = world.getOtherRobot(this);
-                    if (other != null && !other.shield) {
-                        Point otherP = getOtherRobotPosition(); // relative position
-                        if (otherP.x == 0 && otherP.y == 1) {
-                            System.out.println("Taking fuel");
-                            int takeFuel = Math.min(25, other.targetFuel / 2);
-                            takeFuel = Math.min(other.targetFuel, takeFuel);
-                            targetFuel = Math.min(100, targetFuel + takeFuel);
-                            other.targetFuel -= takeFuel;
-                            return;
-                        }
-                    }
+                } else {
+                    siphonDue = true; // try to siphon fuel once the other robot's fuel is known
                 }
-                targetFuel -= FUEL_IDLE;
+                return;
             }
         }
         if (shield) targetFuel -= FUEL_SHIELD;
     }
 
+    /**
+     * Siphons fuel from the other robot if it is unshielded and directly in front, otherwise
+     * taking fuel costs as much as waiting. Done after the other robot's own action has set
+     * its fuel for the turn, so that neither overwrites the other.
+     */
+    private void siphon() {
+        Robot other = world.getOtherRobot(this);
+        if (other != null && !other.shield) {
+            if (relativeLR(other.x, other.y) == 0 && relativeFB(other.x, other.y) == 1) {
+                int takeFuel = Math.min(25, other.targetFuel / 2);
+                takeFuel = Math.min(other.targetFuel, takeFuel);
+                debug(DebugLog.SIPHON, takeFuel, 0);
+                targetFuel = Math.min(100, targetFuel + takeFuel);
+                other.targetFuel -= takeFuel;
+                return;
+            }
+        }
+        targetFuel -= FUEL_IDLE;
+        if (shield) targetFuel -= FUEL_SHIELD;
+    }
+
+    /**
+     * Submits the current action and waits until the world has committed it, then records
+     * the new state. A stepped robot does not wait; its state is recorded when it resumes.
+     * Under a MatchEngine or a SteppedMatch the action is resolved by World.resolveActions(),
+     * in robot order, rather than here; the GUI resolves it at once, so it can be animated.
+     */
     private void processFuelAndBlock() {
         if (cancelled) throw new RobotInterruptedException();
-        // use fuel
-        processFuel();
-        if (this.noWait) {
+        callsSinceAction = 0;
+        if (stepped || turnPhaser != null) {
+            actionDue = true;
+        } else {
+            resolveAction();
+            resolveSiphon();
+        }
+        if (stepped) {
+            stateDue = true;
+            return;
+        } else if (this.noWait) {
             updatePending();
+        } else if (turnPhaser != null) {
+            // first phase: this action is submitted, second phase: the engine has committed the turn
+            turnPhaser.arriveAndAwaitAdvance();
+            turnPhaser.arriveAndAwaitAdvance();
         } else {
-            while (currentAction != 0) {
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException e) {
+            turnLock.lock();
+            try {
+                while (currentAction != 0) {
+                    parked = true;
+                    turnCommitted.awaitUninterruptibly();
                 }
+            } finally {
+                turnLock.unlock();
             }
         }
+        readState();
     }
 
     /**
@@ -564,22 +829,33 @@ public class Robot {
             currentAction = ACTION_WAIT;
             processFuel();
         }
-        otherRobotPos = getOtherRobotPosition();
-        barrels = new ArrayList<Point>(world.getAvailableFuel());
-        for (int i = 0; i < barrels.size(); i++) {
-            Point p = toRelative(barrels.get(i));
-            barrels.set(i, p);
+        committedAction = currentAction;
+        Robot other = world.getOtherRobot(this);
+        hasOther = other != null;
+        if (hasOther) {
+            otherLR = relativeLR(other.x, other.y);
+            otherFB = relativeFB(other.x, other.y);
+        }
+        world.copyFuel(barrelBoard);
+        barrelCount = World.countFuel(barrelBoard);
+        barrelsSorted = false;
+        turnLock.lock();
+        try {
+            currentAction = 0;
+            parked = false;
+            turnCommitted.signalAll();
+        } finally {
+            turnLock.unlock();
         }
-        Collections.sort(barrels, new Comparator<Point>() {
+    }
 
-            @Override
-            public int compare(Point p1, Point p2) {
-                int d1 = Math.abs(p1.x) + Math.abs(p1.y);
-                int d2 = Math.abs(p2.x) + Math.abs(p2.y);
-                return d1 - d2;
-            }
-        });
-        currentAction = 0;
+    /**
+     * @return whether this robot's thread has submitted an action and is waiting for the world
+     * to commit it. Unlike a pending action, which is set before the robot works out its fuel,
+     * this is only set once the robot is done with the turn, so the turn can be committed.
+     */
+    boolean isParked() {
+        return parked;
     }
 
     public String toString() {
@@ -587,13 +863,11 @@ public class Robot {
     }
 
     /**
-     * print a message about the action to System.out if debugging is currently
-     * turned on.
+     * Logs an action or sensor reading to the DebugLog, which prints it if debugging
+     * is currently turned on.
      */
-    private void debug(String action) {
-        //		if (RoboGame.debugDisplay && program != null) {
-        System.out.println(colour + " robot: " + action);
-        //}
+    private void debug(int event, int a, int b) {
+        DebugLog.log(debugId, event, a, b);
     }
 
     /**
@@ -627,9 +901,18 @@ public class Robot {
      * Encodes the state of the robot, used for automarking.
      */
     public void readState() {
-        String state = String.format("%-4s @(%2d,%2d) dir:%-5s fuel:%3d %s", colour, x, y, dir, fuel, shield ? "shielded" : "unshielded");
-        history.add(state);
-        //System.out.println(state);
+        if (historySize == history.length) history = Arrays.copyOf(history, historySize * 2);
+        history[historySize++] = ((long) fuel << 32) | (x << 16) | (y << 8) | (dir.ordinal() << 1) | (shield ? 1 : 0);
+        //System.out.println(formatState(history[historySize - 1]));
+    }
+
+    private String formatState(long state) {
+        int fuel = (int) (state >> 32);
+        int x = (int) (state >> 16) & 0xFF;
+        int y = (int) (state >> 8) & 0xFF;
+        DIRECTION dir = DIRECTION.values()[(int) (state >> 1) & 0x3];
+        boolean shield = (state & 1) != 0;
+        return String.format("%-4s @(%2d,%2d) dir:%-5s fuel:%3d %s", colour, x, y, dir, fuel, shield ? "shielded" : "unshielded");
     }
 
     private enum DIRECTION {NORTH, WEST, SOUTH, EAST}
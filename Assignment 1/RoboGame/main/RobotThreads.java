@@ -0,0 +1,88 @@
+package main;
+
+import java.lang.reflect.Method;
+
+/**
+ * Creates the threads that run robot programs, as platform threads or as virtual threads.
+ * <p>
+ * A robot thread spends nearly all its time blocked in an action until the world commits
+ * the turn, and it blocks by parking (on the turn Condition or the MatchEngine Phaser),
+ * never by sleeping, so it can run on a virtual thread and leave its carrier thread free
+ * while it waits. Virtual threads need Java 21; the builder is looked up reflectively so
+ * the game still builds and runs on older JVMs, where VIRTUAL falls back to platform
+ * threads with a warning.
+ * <p>
+ * The mode is read from the system property robogame.threads ("platform" or "virtual")
+ * at startup and can be changed with {@link #setMode(Mode)}; it applies to robots started
+ * afterwards.
+ */
+public final class RobotThreads {
+
+    public enum Mode {PLATFORM, VIRTUAL}
+
+    private static final Method OF_VIRTUAL = lookup("ofVirtual");
+    private static final Method UNSTARTED = (OF_VIRTUAL == null) ? null : lookup(OF_VIRTUAL.getReturnType(), "unstarted", Runnable.class);
+
+    private static volatile Mode mode = "virtual".equalsIgnoreCase(System.getProperty("robogame.threads")) ? Mode.VIRTUAL : Mode.PLATFORM;
+    private static boolean warned;
+
+    private RobotThreads() {
+    }
+
+    public static Mode getMode() {
+        return mode;
+    }
+
+    public static void setMode(Mode mode) {
+        RobotThreads.mode = mode;
+    }
+
+    /**
+     * @return whether this JVM can create virtual threads
+     */
+    public static boolean isVirtualAvailable() {
+        return UNSTARTED != null;
+    }
+
+    /**
+     * Creates an unstarted robot thread of the current mode.
+     *
+     * @param daemon whether a platform thread should be a daemon; virtual threads always are
+     */
+    public static Thread create(String name, boolean daemon, Runnable task) {
+        if (mode == Mode.VIRTUAL) {
+            if (isVirtualAvailable()) {
+                try {
+                    Thread thread = (Thread) UNSTARTED.invoke(OF_VIRTUAL.invoke(null), task);
+                    thread.setName(name);
+                    return thread;
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("Could not create a virtual thread", e);
+                }
+            }
+            warnUnavailable();
+        }
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(daemon);
+        return thread;
+    }
+
+    private static synchronized void warnUnavailable() {
+        if (!warned) {
+            warned = true;
+            System.out.println("Virtual threads need Java 21, running robots on platform threads");
+        }
+    }
+
+    private static Method lookup(String name) {
+        return lookup(Thread.class, name);
+    }
+
+    private static Method lookup(Class<?> type, String name, Class<?>... parameters) {
+        try {
+            return type.getMethod(name, parameters);
+        } catch (ReflectiveOperationException e) {
+            return null; // before Java 21
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package main;
+
+import nodes.interfaces.ProgramNode;
+import nodes.optimizer.ProgramOptimizer;
+import nodes.serializer.ProgramSerializer;
+import util.exepeptions.ParserFailureException;
+import util.exepeptions.RobotInterruptedException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Checks that every program in a directory survives a round trip through the
+ * {@link ProgramSerializer}, as parsed and as optimized.
+ * <p>
+ * For each tree the bytes read back must serialize to the same bytes, and the tree read back
+ * must make a TesterRobot act and read its sensors exactly as the tree from the Parser does.
+ * Files that do not parse, like the bad examples, are skipped. Also compares the time to
+ * parse each file with the time to read its serialized form.
+ * <p>
+ * Usage: SerializerTester [directory]
+ */
+public class SerializerTester {
+
+    private static final int TIMING_ROUNDS = 2000;
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Path.of((args.length > 0) ? args[0] : RoboGame.CODE_DIRECTORY);
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(f -> f.toString().endsWith(".prog")).sorted().toList();
+        }
+
+        int passed = 0, failed = 0, skipped = 0;
+        long textBytes = 0, binaryBytes = 0, parseNanos = 0, readNanos = 0;
+        for (Path file : files) {
+            String source = Files.readString(file);
+            ProgramNode parsed;
+            try {
+                parsed = new Parser().parse(source);
+            } catch (ParserFailureException e) {
+                skipped++;
+                continue;
+            }
+            if (parsed == null) {
+                skipped++;
+                continue;
+            }
+            String name = file.getFileName().toString();
+            boolean ok = roundTrip(name, parsed) & roundTrip(name + " optimized", ProgramOptimizer.optimize(parsed));
+            if (ok) {
+                passed++;
+                System.out.println("&& OK on " + name);
+            } else {
+                failed++;
+            }
+
+            byte[] binary = ProgramSerializer.serialize(parsed);
+            textBytes += source.length();
+            binaryBytes += binary.length;
+            parseNanos += time(() -> new Parser().parse(source));
+            readNanos += time(() -> ProgramSerializer.deserialize(binary));
+        }
+
+        System.out.printf("%d programs passed, %d failed, %d did not parse%n", passed, failed, skipped);
+        if (passed + failed > 0) {
+            System.out.printf("Size: %d bytes of text, %d serialized (%.0f%%)%n", textBytes, binaryBytes, 100.0 * binaryBytes / textBytes);
+            System.out.printf("Load: %.2f us to parse, %.2f us to deserialize, per program%n",
+                    parseNanos / 1e3 / (passed + failed), readNanos / 1e3 / (passed + failed));
+        }
+        if (failed > 0) System.exit(1);
+    }
+
+    private static boolean roundTrip(String name, ProgramNode program) {
+        try {
+            byte[] bytes = ProgramSerializer.serialize(program);
+            ProgramNode back = ProgramSerializer.deserialize(bytes);
+            if (!Arrays.equals(bytes, ProgramSerializer.serialize(back))) {
+                System.out.println("&& BAD on " + name + ": the tree read back serializes differently");
+                return false;
+            }
+            List<String> expected = run(program), actual = run(back);
+            if (!expected.equals(actual)) {
+                System.out.println("&& BAD on " + name + ": the tree read back runs differently");
+                System.out.println("&& Expected: " + String.join(" ", expected));
+                System.out.println("&& Actual:   " + String.join(" ", actual));
+                return false;
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.out.println("&& BAD on " + name + ": " + e);
+            return false;
+        }
+    }
+
+    private static List<String> run(ProgramNode program) {
+        TesterRobot robot = new TesterRobot();
+        try {
+            program.execute(robot);
+        } catch (RobotInterruptedException e) {
+            // the robot stops after a fixed number of actions
+        }
+        return robot.getOutput();
+    }
+
+    private interface Load {
+        Object run() throws IOException;
+    }
+
+    /**
+     * @return the nanoseconds the load took, at best over a number of rounds
+     */
+    private static long time(Load load) throws IOException {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < TIMING_ROUNDS; i++) {
+            long start = System.nanoTime();
+            load.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,156 @@
+package main;
+
+import nodes.interfaces.ProgramNode;
+import nodes.interpreter.StepInterpreter;
+import util.exepeptions.ParserFailureException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays a match like {@link MatchEngine}, but without a thread per robot.
+ * <p>
+ * Each robot's program runs in a {@link StepInterpreter} and the robots do not block in
+ * their actions, so a turn is simply: step the red robot to its next action, step the blue
+ * robot to its next action, commit the turn. A whole match runs on the calling thread, so
+ * any number of matches can share a small pool of threads.
+ * <p>
+ * A robot that uses up its instruction budget without acting sits the turn out, as a
+ * robot that keeps reading its sensors does under a MatchEngine; it is stopped between two
+ * statements, though, never in the middle of a condition. For programs that act within the
+ * budget the states are the same as under a MatchEngine with the same schedule: both resolve
+ * the submitted actions with World.resolveActions(), red first.
+ * Both robots need a program: the default program of a Robot cannot be stepped.
+ */
+public class SteppedMatch {
+
+    public static final int DEFAULT_BUDGET = 10000;
+
+    private final World world;
+    private final int maxTurns;
+    private final int budget;
+
+    public SteppedMatch(World world) {
+        this(world, MatchEngine.DEFAULT_MAX_TURNS, DEFAULT_BUDGET);
+    }
+
+    /**
+     * @param budget the instructions a robot may use per turn, see {@link StepInterpreter#step(int)}
+     */
+    public SteppedMatch(World world, int maxTurns, int budget) {
+        this.world = world;
+        this.maxTurns = maxTurns;
+        this.budget = budget;
+    }
+
+    /**
+     * Runs the match to completion. The world can no longer be used after this call.
+     *
+     * @return the outcome of the match
+     */
+    public MatchEngine.Result run() {
+        Robot red = world.getRobot(1);
+        Robot blue = world.getRobot(2);
+        if (red.getProgram() == null || blue.getProgram() == null) {
+            throw new IllegalStateException("Both robots need a program to be stepped");
+        }
+        world.startStepped();
+        StepInterpreter[] programs = {new StepInterpreter(red.getProgram(), red), new StepInterpreter(blue.getProgram(), blue)};
+        Robot[] robots = {red, blue};
+        int turns = 0;
+        try {
+            while (turns < maxTurns) {
+                for (int i = 0; i < robots.length; i++) {
+                    robots[i].resumeStepped();
+                    if (!programs[i].isFinished() && programs[i].step(budget) == StepInterpreter.FINISHED) {
+                        robots[i].setFinished(true);
+                    }
+                }
+                world.resolveActions();
+                if (MatchEngine.outOfFuel(red, blue)) break; // the GUI stops before committing a fatal turn
+                world.updateWorld();
+                turns++;
+                if (MatchEngine.outOfFuel(red, blue)) break;
+            }
+            return new MatchEngine.Result(turns, red, blue);
+        } finally {
+            world.reset();
+        }
+    }
+
+    /**
+     * Plays a number of headless matches between two programs on a pool of threads, one
+     * FuelSchedule seed per game. A single game prints the states of both robots, as
+     * MatchEngine does.
+     * Usage: SteppedMatch redProgram blueProgram [games] [seed] [threads] [budget]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: SteppedMatch redProgram blueProgram [games] [seed] [threads] [budget]");
+            return;
+        }
+        int games = (args.length > 2) ? Integer.parseInt(args[2]) : 1;
+        long seed = (args.length > 3) ? Long.parseLong(args[3]) : 0;
+        int threads = (args.length > 4) ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        int budget = (args.length > 5) ? Integer.parseInt(args[5]) : DEFAULT_BUDGET;
+
+        ProgramNode red, blue;
+        try {
+            red = ProgramCache.shared().load(Path.of(args[0])).getOptimized();
+            blue = ProgramCache.shared().load(Path.of(args[1])).getOptimized();
+        } catch (ParserFailureException e) {
+            System.out.println("Parser error:");
+            System.out.println(e.getMessage());
+            return;
+        }
+        if (red == null || blue == null) {
+            System.out.println("Both programs must have at least one statement");
+            return;
+        }
+        if (games > 1) DebugLog.setLevel(DebugLog.Level.OFF); // the robots would log every action
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<MatchEngine.Result>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int game = 0; game < games; game++) {
+            long worldSeed = seed + game;
+            results.add(pool.submit(() -> {
+                World world = new World(new FuelSchedule(worldSeed, MatchEngine.DEFAULT_MAX_TURNS));
+                world.getRobot(1).setProgram(red);
+                world.getRobot(2).setProgram(blue);
+                return new SteppedMatch(world, MatchEngine.DEFAULT_MAX_TURNS, budget).run();
+            }));
+        }
+        pool.shutdown();
+
+        int[] wins = new int[3];
+        MatchEngine.Result last = null;
+        try {
+            for (Future<MatchEngine.Result> result : results) {
+                last = result.get();
+                wins[last.getWinner()]++;
+            }
+        } catch (ExecutionException e) {
+            pool.shutdownNow();
+            throw new IllegalStateException("A game failed", e.getCause());
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        DebugLog.flush();
+
+        if (games == 1) {
+            List<String> history1 = last.getHistory(1), history2 = last.getHistory(2);
+            for (int i = 0; i < Math.max(history1.size(), history2.size()); i++) {
+                System.out.printf("%4d  %-45s %s%n", i, (i < history1.size()) ? history1.get(i) : "", (i < history2.size()) ? history2.get(i) : "");
+            }
+            System.out.println(last);
+        }
+        System.out.printf("%d games on %d threads in %.2f s (%.0f games/s): red won %d, blue won %d, %d drawn%n",
+                games, threads, seconds, games / seconds, wins[1], wins[2], wins[0]);
+    }
+}
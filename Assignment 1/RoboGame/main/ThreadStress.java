@@ -0,0 +1,93 @@
+package main;
+
+import nodes.interfaces.ProgramNode;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs many headless Worlds at once, to compare the cost of robot threads per {@link RobotThreads} mode.
+ * <p>
+ * Every World plays a MatchEngine match on a thread of its own, so a run of n Worlds has
+ * 3n threads alive at its peak: the engine and both robots of each World. All matches are
+ * started together and the run ends when the last one does. Reported are the wall time,
+ * the committed turns per second, the peak number of live platform threads, and the peak
+ * heap in use, sampled every 10ms, above the heap in use before the run.
+ * <p>
+ * The matches stay on MatchEngine, as its robot threads are what is being measured. A
+ * MatchEngine resolves every turn in robot order, so both modes play exactly the same
+ * matches and commit the same number of turns, and their turns per second compare like
+ * for like. SteppedMatch, which has no robot threads, is timed by its own main method.
+ * <p>
+ * Usage: ThreadStress [worlds] [platform|virtual] [maxTurns] [redProgram] [blueProgram]
+ */
+public class ThreadStress {
+
+    private static final long SAMPLE_MILLIS = 10;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int worlds = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+        RobotThreads.Mode mode = (args.length > 1) ? RobotThreads.Mode.valueOf(args[1].toUpperCase()) : RobotThreads.getMode();
+        int maxTurns = (args.length > 2) ? Integer.parseInt(args[2]) : 200;
+        Path red = Path.of((args.length > 3) ? args[3] : RoboGame.CODE_DIRECTORY + "s1_full.prog");
+        Path blue = Path.of((args.length > 4) ? args[4] : RoboGame.CODE_DIRECTORY + "s2_full.prog");
+
+        RobotThreads.setMode(mode);
+        if (mode == RobotThreads.Mode.VIRTUAL && !RobotThreads.isVirtualAvailable()) {
+            System.out.println("Virtual threads need Java 21, this JVM is " + System.getProperty("java.version"));
+            return;
+        }
+        ProgramNode redProgram = ProgramCache.shared().load(red).getOptimized();
+        ProgramNode blueProgram = ProgramCache.shared().load(blue).getOptimized();
+        DebugLog.setLevel(DebugLog.Level.OFF); // the robots would log every action
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+        ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+
+        AtomicLong peakHeap = new AtomicLong(heapBefore);
+        Thread sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                try {
+                    Thread.sleep(SAMPLE_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "heap-sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+
+        CountDownLatch done = new CountDownLatch(worlds);
+        AtomicLong turns = new AtomicLong();
+        long start = System.nanoTime();
+        for (int i = 0; i < worlds; i++) {
+            World world = new World(new FuelSchedule(i, maxTurns));
+            world.getRobot(1).setProgram(redProgram);
+            world.getRobot(2).setProgram(blueProgram);
+            RobotThreads.create("engine-" + i, true, () -> {
+                try {
+                    turns.addAndGet(new MatchEngine(world, maxTurns).run().getTurns());
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        sampler.interrupt();
+
+        System.out.printf("Mode:                 %s (Java %s)%n", mode, System.getProperty("java.version"));
+        System.out.printf("Worlds:               %d, %d threads%n", worlds, 3 * worlds);
+        System.out.printf("Wall time:            %.2f s%n", seconds);
+        System.out.printf("Turns:                %d (%.0f turns/s)%n", turns.get(), turns.get() / seconds);
+        System.out.printf("Peak platform threads: %d%n", ManagementFactory.getThreadMXBean().getPeakThreadCount());
+        System.out.printf("Peak heap above start: %.1f MB%n", (peakHeap.get() - heapBefore) / 1e6);
+    }
+}
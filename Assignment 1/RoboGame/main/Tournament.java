@@ -0,0 +1,195 @@
+package main;
+
+import nodes.interfaces.ProgramNode;
+import util.exepeptions.ParserFailureException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Plays every pair of robot programs in a directory against each other, headless and in parallel.
+ * <p>
+ * Each program is parsed and optimized once, through the shared ProgramCache, and the tree
+ * is shared by all of its matches. Every pairing is played a number of times, swapping
+ * colours between games, and every game gets its own FuelSchedule. Games are independent
+ * SteppedMatch runs spread over a fixed pool with one thread per core: a SteppedMatch needs
+ * no robot threads, plays a game the same way every time, and makes a program that stops
+ * acting sit its turns out rather than hold up the pool, so the whole leaderboard is
+ * reproducible from the seed.
+ * <p>
+ * A program that fails in a game, such as by dividing by zero, has finished as far as the
+ * game is concerned: its robot waits out the rest of the game, and usually loses it. A game
+ * that fails for any other reason is reported and not scored, and the tournament goes on.
+ * <p>
+ * Usage: Tournament directory [gamesPerPairing] [seed] [threads]
+ */
+public class Tournament {
+
+    private static final int WIN_POINTS = 3, DRAW_POINTS = 1;
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final int gamesPerPairing;
+    private final long seed;
+    private final int maxTurns;
+
+    public Tournament(int gamesPerPairing, long seed, int maxTurns) {
+        this.gamesPerPairing = gamesPerPairing;
+        this.seed = seed;
+        this.maxTurns = maxTurns;
+    }
+
+    /**
+     * Parses every .prog file in the directory, reporting and skipping those that are empty or do not parse.
+     */
+    public void loadPrograms(Path directory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(f -> f.toString().endsWith(".prog")).sorted().toList();
+        }
+        for (Path file : files) {
+            try {
+                ProgramCache.Program program = ProgramCache.shared().load(file);
+                if (program.isEmpty()) {
+                    System.out.println("Skipping " + file.getFileName() + ": empty program");
+                    continue;
+                }
+                entries.add(new Entry(file.getFileName().toString(), program.getOptimized()));
+            } catch (ParserFailureException e) {
+                System.out.println("Skipping " + file.getFileName() + ": " + e.getMessage().replaceAll("\\n", " "));
+            }
+        }
+    }
+
+    /**
+     * Plays all games on the given number of threads and records the results in the entries.
+     *
+     * @return the number of games played and scored
+     */
+    public int play(int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<MatchEngine.Result>> results = new ArrayList<>();
+        List<int[]> games = new ArrayList<>(); // {red entry, blue entry}
+        long gameSeed = seed;
+        for (int a = 0; a < entries.size(); a++) {
+            for (int b = a + 1; b < entries.size(); b++) {
+                for (int game = 0; game < gamesPerPairing; game++) {
+                    int red = (game % 2 == 0) ? a : b;
+                    int blue = (game % 2 == 0) ? b : a;
+                    long worldSeed = gameSeed++;
+                    games.add(new int[]{red, blue});
+                    results.add(pool.submit(() -> playGame(red, blue, worldSeed)));
+                }
+            }
+        }
+        pool.shutdown();
+
+        int played = 0;
+        for (int i = 0; i < games.size(); i++) {
+            Entry red = entries.get(games.get(i)[0]);
+            Entry blue = entries.get(games.get(i)[1]);
+            MatchEngine.Result result;
+            try {
+                result = results.get(i).get();
+            } catch (ExecutionException e) {
+                System.out.println("Game " + red.name + " vs " + blue.name + " failed and is not scored: " + e.getCause());
+                continue;
+            }
+            played++;
+            switch (result.getWinner()) {
+                case 1 -> record(red, blue);
+                case 2 -> record(blue, red);
+                default -> {
+                    red.draws++;
+                    blue.draws++;
+                }
+            }
+        }
+        return played;
+    }
+
+    private MatchEngine.Result playGame(int red, int blue, long worldSeed) {
+        World world = new World(new FuelSchedule(worldSeed, maxTurns));
+        world.getRobot(1).setProgram(entries.get(red).program);
+        world.getRobot(2).setProgram(entries.get(blue).program);
+        return new SteppedMatch(world, maxTurns, SteppedMatch.DEFAULT_BUDGET).run();
+    }
+
+    private static void record(Entry winner, Entry loser) {
+        winner.wins++;
+        loser.losses++;
+    }
+
+    /**
+     * @return the entries, best first
+     */
+    public List<Entry> getLeaderboard() {
+        List<Entry> leaderboard = new ArrayList<>(entries);
+        leaderboard.sort(Comparator.comparingInt(Entry::getPoints).reversed().thenComparing(e -> e.name));
+        return leaderboard;
+    }
+
+    /**
+     * A program taking part in the tournament, with its results so far.
+     */
+    public static class Entry {
+
+        private final String name;
+        private final ProgramNode program;
+        private int wins, draws, losses;
+
+        private Entry(String name, ProgramNode program) {
+            this.name = name;
+            this.program = program;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getPlayed() {
+            return wins + draws + losses;
+        }
+
+        public int getPoints() {
+            return wins * WIN_POINTS + draws * DRAW_POINTS;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-20s %6d %6d %6d %6d %7d", name, getPlayed(), wins, draws, losses, getPoints());
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.out.println("Usage: Tournament directory [gamesPerPairing] [seed] [threads]");
+            return;
+        }
+        int gamesPerPairing = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+        long seed = (args.length > 2) ? Long.parseLong(args[2]) : 0;
+        int threads = (args.length > 3) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        Tournament tournament = new Tournament(gamesPerPairing, seed, MatchEngine.DEFAULT_MAX_TURNS);
+        tournament.loadPrograms(Path.of(args[0]));
+
+        DebugLog.setLevel(DebugLog.Level.OFF); // the robots would log every action
+        long start = System.nanoTime();
+        int games = tournament.play(threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%-20s %6s %6s %6s %6s %7s%n", "Program", "Played", "Won", "Drawn", "Lost", "Points");
+        for (Entry entry : tournament.getLeaderboard()) {
+            System.out.println(entry);
+        }
+        System.out.printf("%d games on %d threads in %.2f s (%.0f games/s)%n", games, threads, seconds, games / seconds);
+    }
+}
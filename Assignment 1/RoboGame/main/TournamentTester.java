@@ -0,0 +1,72 @@
+package main;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Checks that a Tournament with programs that fail part way, or never act, still plays and
+ * scores every game, and that the same seed gives the same leaderboard.
+ * <p>
+ * Two sample programs are played against a program that divides by zero, one that reads a
+ * barrel at a negative index, and one that loops without acting, in a temporary directory.
+ * <p>
+ * Usage: TournamentTester [gamesPerPairing]
+ */
+public class TournamentTester {
+
+    private static final String[][] BOTS = {
+            {"div_zero.prog", "loop { move(div(10, sub(fuelLeft, fuelLeft))); }"},
+            {"bad_index.prog", "move; wait(barrelLR(-1));"},
+            {"idle.prog", "while (eq(1, 1)) { $a = add($a, 1); }"}
+    };
+    private static final String[] SAMPLES = {"s1_full.prog", "s2_full.prog"};
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int gamesPerPairing = (args.length > 0) ? Integer.parseInt(args[0]) : 2;
+        Path directory = Files.createTempDirectory("tournament");
+        try {
+            for (String sample : SAMPLES) {
+                Files.copy(Path.of(RoboGame.CODE_DIRECTORY, sample), directory.resolve(sample));
+            }
+            for (String[] bot : BOTS) {
+                Files.writeString(directory.resolve(bot[0]), bot[1]);
+            }
+            DebugLog.setLevel(DebugLog.Level.OFF); // the robots would log every action
+
+            int programs = SAMPLES.length + BOTS.length;
+            int expected = programs * (programs - 1) / 2 * gamesPerPairing;
+            List<String> first = null;
+            for (int run = 0; run < 2; run++) {
+                Tournament tournament = new Tournament(gamesPerPairing, 1, MatchEngine.DEFAULT_MAX_TURNS);
+                tournament.loadPrograms(directory);
+                int games;
+                try {
+                    games = tournament.play(Runtime.getRuntime().availableProcessors());
+                } catch (RuntimeException e) {
+                    System.out.println("&& BAD: the tournament failed: " + e);
+                    return;
+                }
+                List<Tournament.Entry> leaderboard = tournament.getLeaderboard();
+                List<String> standings = leaderboard.stream().map(Tournament.Entry::toString).toList();
+                if (games != expected || leaderboard.size() != programs) {
+                    System.out.println("&& BAD: " + games + " of " + expected + " games scored for " + leaderboard.size() + " programs");
+                } else if (leaderboard.stream().anyMatch(e -> e.getPlayed() != (programs - 1) * gamesPerPairing)) {
+                    System.out.println("&& BAD: a program did not play all its games: " + standings);
+                } else if (first != null && !first.equals(standings)) {
+                    System.out.println("&& BAD: the same seed gave a different leaderboard: " + first + " then " + standings);
+                } else {
+                    System.out.println("&& OK on run " + (run + 1) + ": " + games + " games scored");
+                }
+                first = standings;
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package main;
+
+import nodes.interfaces.ProgramNode;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the per-turn latency of the robot threads: the time from World.updateWorld()
+ * committing a turn until both robots have submitted their next action.
+ * <p>
+ * For comparison it also measures a Thread.sleep(10) polling loop like the one that
+ * Robot.processFuelAndBlock() used before the turn handoff. That code path is gone, so this
+ * is a stand-in: a single thread polling an AtomicInteger, with no robot or world involved.
+ * <p>
+ * Usage: TurnLatencyBenchmark [turns]
+ */
+public class TurnLatencyBenchmark {
+
+    private static final String PROGRAM = "loop { move; turnL; wait; turnR; }";
+
+    public static void main(String[] args) {
+        int turns = (args.length > 0) ? Integer.parseInt(args[0]) : 5000;
+
+        DebugLog.setLevel(DebugLog.Level.OFF); // the robots would log every action
+        measureHandoff(turns / 10); // warm up
+        double handoff = measureHandoff(turns);
+        double polling = measurePolling(Math.min(turns, 200));
+
+        System.out.println("Turns measured:            " + turns);
+        System.out.printf("Condition handoff:         %10.1f us/turn%n", handoff / 1e3);
+        System.out.printf("Sleep polling (old, 10ms): %10.1f us/turn%n", polling / 1e3);
+        System.out.println("(sleep polling is timed on a stand-in AtomicInteger loop, not on robot threads)");
+    }
+
+    /**
+     * @return the mean nanoseconds from a commit until both robots have acted again
+     */
+    private static double measureHandoff(int turns) {
+        World world = new World();
+        ProgramNode program = new Parser().parse(PROGRAM);
+        world.getRobot(1).setProgram(program);
+        world.getRobot(2).setProgram(program);
+        world.start();
+        awaitSubmitted(world);
+
+        long total = 0;
+        for (int i = 0; i < turns; i++) {
+            long start = System.nanoTime();
+            world.updateWorld();
+            awaitSubmitted(world);
+            total += System.nanoTime() - start;
+        }
+        world.reset();
+        return total / (double) turns;
+    }
+
+    /**
+     * Waits until both robots are parked, waiting for their actions to be committed.
+     */
+    private static void awaitSubmitted(World world) {
+        while (!world.getRobot(1).isParked() || !world.getRobot(2).isParked()) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * @return the mean nanoseconds for a thread sleeping in 10ms steps to notice its turn was committed
+     */
+    private static double measurePolling(int turns) {
+        AtomicInteger currentAction = new AtomicInteger(Robot.ACTION_WAIT);
+        Thread robot = new Thread(() -> {
+            for (int i = 0; i < turns; i++) {
+                while (currentAction.get() != 0) {
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                    }
+                }
+                currentAction.set(Robot.ACTION_WAIT); // submit the next action
+            }
+        });
+        robot.start();
+
+        long total = 0;
+        for (int i = 0; i < turns; i++) {
+            while (currentAction.get() == 0) {
+                Thread.onSpinWait();
+            }
+            long start = System.nanoTime();
+            currentAction.set(0); // commit
+            while (currentAction.get() == 0) {
+                Thread.onSpinWait();
+            }
+            total += System.nanoTime() - start;
+        }
+        return total / (double) turns;
+    }
+}
@@ -1,17 +1,13 @@
 package main;
 
-import nodes.interfaces.ProgramNode;
 import util.exepeptions.ParserFailureException;
 import util.exepeptions.RobotInterruptedException;
 
-import java.awt.*;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.Collections;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Random;
-import java.util.Scanner;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Phaser;
 
 /**
  * Simulation of the robots in their world
@@ -20,11 +16,40 @@ import java.util.concurrent.ConcurrentHashMap;
 public class World {
 
     public static final int SIZE = 12;
-    private final Random rand = new Random();
-    protected Set<Point> availableFuel = Collections.newSetFromMap(new ConcurrentHashMap<Point, Boolean>());
+    public static final int FUEL_WORDS = (SIZE * SIZE + 63) / 64; // longs in a fuel board
+    private final Random rand;
+    private final FuelSchedule schedule; // if set, replaces rand
+    private int spawns; // number of spawns taken from the schedule
+    // Fuel board: bit (y * SIZE + x) % 64 of word (y * SIZE + x) / 64 is set if a barrel is at (x, y)
+    private final long[] fuel = new long[FUEL_WORDS];
+    private ReplayWriter replay; // if set, records every committed turn
     protected Robot[] robots;
 
     public World() {
+        this(new Random());
+    }
+
+    /**
+     * Creates a world whose fuel placement is determined by the seed.
+     */
+    public World(long seed) {
+        this(new Random(seed));
+    }
+
+    /**
+     * Creates a world whose fuel placement is read from a pre-generated schedule.
+     */
+    public World(FuelSchedule schedule) {
+        this(null, schedule);
+    }
+
+    private World(Random rand) {
+        this(rand, null);
+    }
+
+    private World(Random rand, FuelSchedule schedule) {
+        this.rand = rand;
+        this.schedule = schedule;
         robots = new Robot[]{null, new Robot(this, 0, 0, "red", false), new Robot(this, SIZE - 1, SIZE - 1, "blue", false)};
     }
 
@@ -32,50 +57,164 @@ public class World {
      * This world can no longer be used after this call.
      */
     public void reset() {
-        availableFuel.clear();
+        synchronized (fuel) {
+            Arrays.fill(fuel, 0);
+        }
         for (int i = 1; i <= 2; i++) {
             robots[i].updatePending();
             robots[i].cancel();
         }
     }
 
-    public Set<Point> getAvailableFuel() {
-        return availableFuel;
+    //----------------------------------------------------------------//
+    //                             FUEL                               //
+    //----------------------------------------------------------------//
+
+    /**
+     * @return whether there is a barrel at (x, y)
+     */
+    public boolean hasFuel(int x, int y) {
+        int cell = y * SIZE + x;
+        synchronized (fuel) {
+            return (fuel[cell >>> 6] & (1L << cell)) != 0;
+        }
+    }
+
+    /**
+     * Removes the barrel at (x, y), if there is one.
+     *
+     * @return whether there was a barrel to take
+     */
+    boolean takeFuel(int x, int y) {
+        int cell = y * SIZE + x;
+        long bit = 1L << cell;
+        synchronized (fuel) {
+            boolean present = (fuel[cell >>> 6] & bit) != 0;
+            fuel[cell >>> 6] &= ~bit;
+            return present;
+        }
+    }
+
+    /**
+     * Copies the current fuel board into the given array of FUEL_WORDS longs.
+     */
+    public void copyFuel(long[] board) {
+        synchronized (fuel) {
+            System.arraycopy(fuel, 0, board, 0, FUEL_WORDS);
+        }
+    }
+
+    /**
+     * Finds the first barrel on a fuel board at or after the given cell, in row order.
+     * Iterate over a board with {@code for (int c = nextFuel(b, 0); c >= 0; c = nextFuel(b, c + 1))}.
+     *
+     * @param board a fuel board, as filled in by {@link #copyFuel(long[])}
+     * @param from  the cell (y * SIZE + x) to start from
+     * @return the cell of the barrel, or -1 if there are no more
+     */
+    public static int nextFuel(long[] board, int from) {
+        int word = from >>> 6;
+        if (word >= FUEL_WORDS) return -1;
+        long bits = board[word] & (-1L << from);
+        while (bits == 0) {
+            if (++word == FUEL_WORDS) return -1;
+            bits = board[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * @return the number of barrels on a fuel board
+     */
+    public static int countFuel(long[] board) {
+        int count = 0;
+        for (long word : board) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Replaces the fuel board, for replay playback.
+     */
+    void setFuel(long[] board) {
+        synchronized (fuel) {
+            System.arraycopy(board, 0, fuel, 0, FUEL_WORDS);
+        }
+    }
+
+    private void placeFuel(int cell) {
+        synchronized (fuel) {
+            fuel[cell >>> 6] |= 1L << cell;
+        }
+    }
+
+    /**
+     * Resolves the actions the robots have submitted this turn under a MatchEngine or a
+     * SteppedMatch: moves and fuel costs red then blue, then siphons red then blue. A turn
+     * therefore comes out the same however the robot threads were scheduled. Call it once
+     * both robots have submitted, before checking their fuel and committing the turn.
+     */
+    void resolveActions() {
+        for (int i = 1; i <= 2; i++) {
+            robots[i].resolveSubmitted();
+        }
+        for (int i = 1; i <= 2; i++) {
+            robots[i].resolveSiphon();
+        }
     }
 
     public void updateWorld() {
-        addFuel(false);
+        spawnFuel(false);
         for (int i = 1; i <= 2; i++) {
             robots[i].updatePending();
         }
+        if (replay != null) replay.record(this);
+    }
+
+    /**
+     * Records the starting state and every committed turn of this world. Must be called
+     * before the world is started; the caller closes the writer once the game is over.
+     */
+    public void setReplay(ReplayWriter replay) {
+        this.replay = replay;
+    }
+
+    /**
+     * Captures the position of the game, for a search to play on from. Take it between turns:
+     * an action that has been submitted but not yet committed is not part of it.
+     *
+     * @throws IllegalStateException if the world places fuel at random rather than from a FuelSchedule
+     */
+    public WorldState snapshot() {
+        if (schedule == null) throw new IllegalStateException("Only a world with a FuelSchedule can be captured");
+        if (spawns == 0) return WorldState.start(schedule); // the initial fuel is placed when the world starts
+        long[] board = new long[FUEL_WORDS];
+        copyFuel(board);
+        return WorldState.of(robots[1].packState(), robots[2].packState(), board, spawns - 2, schedule);
     }
 
     public void loadRobotProgram(int id, File code) {
         try {
-            Scanner scanner = new Scanner(code);
-            ProgramNode prog = new Parser().parse(scanner);
-            if (prog == null) {
+            ProgramCache.Program prog = ProgramCache.shared().load(code.toPath());
+            if (prog.isEmpty()) {
                 System.out.println("Robot " + id + " was given an empty program and ignored it.");
             } else {
                 System.out.println("Robot " + id + " now has program: ");
-                System.out.println(prog);
-                robots[id].setProgram(prog);
+                System.out.println(prog.getParsed());
+                robots[id].setProgram(prog.getOptimized());
             }
-        } catch (FileNotFoundException e) {
-            System.out.println("Robot program source file not found");
+        } catch (IOException e) {
+            System.out.println("Robot program " + code.getName() + " could not be read: " + e.getMessage());
         } catch (ParserFailureException e) {
-            System.out.println("Parser error:");
+            System.out.println((e.getLine() > 0) ? "Parser error at line " + e.getLine() + ", column " + e.getColumn() + ":" : "Parser error:");
             System.out.println(e.getMessage());
         }
     }
 
     public void start() {
-        // add some initial fuel
-        if (availableFuel.isEmpty()) {
-            addFuel(true);
-            addFuel(true);
-        }
-        new Thread(() -> {
+        addInitialFuel();
+        RobotThreads.create("robot-1", false, () -> {
             try {
                 robots[1].run();
             } catch (RobotInterruptedException e) {
@@ -93,7 +232,7 @@ public class World {
 			}
                         }).start();
         */
-        new Thread(() -> {
+        RobotThreads.create("robot-2", false, () -> {
             try {
                 robots[2].run();
             } catch (RobotInterruptedException e) {
@@ -102,6 +241,46 @@ public class World {
         }).start();
     }
 
+    /**
+     * Starts both robots in lock-step with the given phaser instead of the GUI timer,
+     * on threads of the current {@link RobotThreads} mode.
+     * Each robot registers with the phaser before its thread starts and deregisters
+     * when its program ends, so the driver never waits on a robot that will not act again.
+     *
+     * @param phaser the phaser driving the turns, see {@link MatchEngine} for the protocol
+     * @return the robot threads, in robot order
+     */
+    Thread[] startLockStep(Phaser phaser) {
+        addInitialFuel();
+        Thread[] threads = new Thread[robots.length - 1];
+        for (int i = 1; i <= 2; i++) {
+            Robot robot = robots[i];
+            robot.setTurnPhaser(phaser);
+            phaser.register();
+            threads[i - 1] = RobotThreads.create("robot-" + i, true, () -> {
+                try {
+                    robot.run();
+                } catch (RobotInterruptedException e) {
+                } finally {
+                    robot.setFinished(true);
+                    phaser.arriveAndDeregister();
+                }
+            });
+            threads[i - 1].start();
+        }
+        return threads;
+    }
+
+    /**
+     * Prepares both robots to be driven by a SteppedMatch instead of threads of their own.
+     */
+    void startStepped() {
+        addInitialFuel();
+        for (int i = 1; i <= 2; i++) {
+            robots[i].setStepped(true);
+        }
+    }
+
     public Robot getRobot(int id) {
         if (id <= 0 || id > robots.length) {
             return null;
@@ -118,12 +297,32 @@ public class World {
         return null;
     }
 
+    private void addInitialFuel() {
+        boolean empty;
+        synchronized (fuel) {
+            empty = countFuel(fuel) == 0;
+        }
+        if (empty) {
+            spawnFuel(true);
+            spawnFuel(true);
+        }
+        if (replay != null) replay.record(this);
+    }
+
+    private void spawnFuel(boolean definitely) {
+        if (schedule != null) {
+            int cell = schedule.getCell(spawns++);
+            if (cell != FuelSchedule.NONE) placeFuel(cell);
+        } else {
+            addFuel(definitely);
+        }
+    }
+
     private void addFuel(boolean definitely) {
-        if (definitely || rand.nextDouble() < 0.2) {
-            int x = rand.nextInt(12);
-            int y = rand.nextInt(12);
-            Point fuel = new Point(x, y);
-            availableFuel.add(fuel);
+        if (definitely || rand.nextDouble() < FuelSchedule.SPAWN_CHANCE) {
+            int x = rand.nextInt(SIZE);
+            int y = rand.nextInt(SIZE);
+            placeFuel(y * SIZE + x);
         }
     }
 	
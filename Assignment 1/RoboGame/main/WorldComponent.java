@@ -17,8 +17,12 @@ public class WorldComponent extends JComponent {
     private static final int ANIMATION_DELAY = 20;
     private static final int WORLD_UPDATE_DELAY = 33;
     private BufferedImage fuelImage;
+    private final long[] fuelBoard = new long[World.FUEL_WORDS]; // copied from the world on every paint
     private World world;
     private Timer timer;
+    private volatile ReplayReader replay; // set while a replay is played back instead of a live game
+    private int replayTurn;
+    private final long[] replayFuel = new long[World.FUEL_WORDS];
 
     private int tick = 0;
 
@@ -45,6 +49,34 @@ public class WorldComponent extends JComponent {
             timer.cancel();
         world.reset();
         world = new World();
+        replay = null; // releases the mapped file of a replay, and stops its task at the next tick
+    }
+
+    /**
+     * Plays a recorded game back from its first turn, at the speed of a live game. Any
+     * replay being played back is stopped and released first.
+     */
+    public void startReplay(ReplayReader replay) {
+        reset();
+        this.replay = replay;
+        seekReplay(replay, 0);
+        Timer timer = new Timer();
+        this.timer = timer;
+        timer.schedule(new ReplayTask(replay, timer), 0, ANIMATION_DELAY);
+    }
+
+    /**
+     * Jumps to the given turn of the replay being played back, if there is one.
+     */
+    public void seekReplay(int turn) {
+        ReplayReader replay = this.replay;
+        if (replay != null) seekReplay(replay, turn);
+    }
+
+    private void seekReplay(ReplayReader replay, int turn) {
+        replayTurn = Math.max(0, Math.min(turn, replay.getTurns() - 1));
+        replay.show(replayTurn, world, replayFuel);
+        repaint();
     }
 
     public void loadRobotProgram(int rob, File code) {
@@ -68,9 +100,10 @@ public class WorldComponent extends JComponent {
             g2d.draw(vline);
         }
 
-        for (Point fuel : world.getAvailableFuel()) {
-            int x = fuel.x * GRID_SIZE + GRID_SIZE / 2 - fuelImage.getWidth() / 2;
-            int y = fuel.y * GRID_SIZE + GRID_SIZE / 2 - fuelImage.getHeight() / 2;
+        world.copyFuel(fuelBoard);
+        for (int cell = World.nextFuel(fuelBoard, 0); cell >= 0; cell = World.nextFuel(fuelBoard, cell + 1)) {
+            int x = (cell % World.SIZE) * GRID_SIZE + GRID_SIZE / 2 - fuelImage.getWidth() / 2;
+            int y = (cell / World.SIZE) * GRID_SIZE + GRID_SIZE / 2 - fuelImage.getHeight() / 2;
             g2d.drawImage(fuelImage, x, y, null);
         }
 
@@ -115,4 +148,38 @@ public class WorldComponent extends JComponent {
             repaint();
         }
     }
+
+    /**
+     * Plays back the replay it was started with. Timer.cancel() does not stop a run() that is
+     * under way, so the task keeps its own replay and timer rather than reading the fields,
+     * and stops once reset() or another replay has taken its replay's place.
+     */
+    private class ReplayTask extends TimerTask {
+
+        private final ReplayReader replay;
+        private final Timer timer;
+
+        public ReplayTask(ReplayReader replay, Timer timer) {
+            this.replay = replay;
+            this.timer = timer;
+            tick = 0;
+        }
+
+        @Override
+        public void run() {
+            if (WorldComponent.this.replay != replay) {
+                timer.cancel();
+                return;
+            }
+            tick++;
+            if (tick % WORLD_UPDATE_DELAY == 0) {
+                if (replayTurn + 1 >= replay.getTurns()) {
+                    timer.cancel();
+                    return;
+                }
+                seekReplay(replay, replayTurn + 1);
+            }
+            repaint();
+        }
+    }
 }
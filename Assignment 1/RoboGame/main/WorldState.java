@@ -0,0 +1,404 @@
+package main;
+
+/**
+ * An immutable position of a game: both robots and the fuel board, between two turns.
+ * <p>
+ * A World keeps its state in the mutable fields of the world and its robots, next to the
+ * threads running the programs, so a position cannot be copied or played two ways. A
+ * WorldState is a handful of primitive fields: each robot packed into an int, the fuel
+ * board as three words of bits as in World, the number of turns played, and the shared
+ * FuelSchedule the coming barrels are taken from. Copying one is copying the reference,
+ * and {@link #step} is a pure function from a position and two actions to the next
+ * position, so a search can branch from any position as often as it likes.
+ * <p>
+ * A turn is played as World.resolveActions resolves it, following the rules of Robot:
+ * red acts first, then blue; a robot moving into the cell the other robot is in or moving
+ * to stays put; then, red first, taking fuel where there is no barrel siphons from an
+ * unshielded robot directly in front. If either robot's pending fuel is then below zero the
+ * turn is not committed and the game is over, otherwise barrels spawn, the turn is
+ * committed, and a robot left with no fuel is dead.
+ * <p>
+ * A robot that sits a turn out, as a robot whose program stalls does, uses no fuel. A
+ * robot whose program has ended is not modelled: in a World it keeps waiting, a turn behind.
+ */
+public final class WorldState {
+
+    /**
+     * The robot does not act this turn.
+     */
+    public static final int NONE = 0;
+    /**
+     * Added to an action to raise or lower the shield first, as the shieldOn and shieldOff
+     * statements do before a program's next action.
+     */
+    public static final int SHIELD_ON = 1 << 4, SHIELD_OFF = 1 << 5;
+
+    // Directions, the ordinals of Robot.DIRECTION
+    public static final int NORTH = 0, WEST = 1, SOUTH = 2, EAST = 3;
+
+    private static final int FUEL_IDLE = 3, FUEL_MOVE = 6, FUEL_TURN = 5, FUEL_SHIELD = 15;
+    private static final int ACTION_MASK = SHIELD_ON - 1;
+
+    // A robot is packed into an int: x in bits 0-3, y in bits 4-7, the direction in bits
+    // 8-9, the shield in bit 10, dead in bit 11, and the fuel as a signed short in bits 16-31
+    private static final int SHIELD = 1 << 10, DEAD = 1 << 11;
+
+    private final int red, blue;
+    private final long fuel0, fuel1, fuel2; // bit c % 64 of word c / 64 is set if a barrel is at cell c
+    private final int turn;
+    private final FuelSchedule schedule;
+
+    private WorldState(int red, int blue, long fuel0, long fuel1, long fuel2, int turn, FuelSchedule schedule) {
+        this.red = red;
+        this.blue = blue;
+        this.fuel0 = fuel0;
+        this.fuel1 = fuel1;
+        this.fuel2 = fuel2;
+        this.turn = turn;
+        this.schedule = schedule;
+    }
+
+    /**
+     * @return the position a World using the schedule starts a game in
+     */
+    public static WorldState start(FuelSchedule schedule) {
+        long[] board = new long[World.FUEL_WORDS];
+        for (int spawn = 0; spawn < 2; spawn++) {
+            int cell = schedule.getCell(spawn);
+            if (cell != FuelSchedule.NONE) board[cell >>> 6] |= 1L << cell;
+        }
+        return new WorldState(robot(0, 0, SOUTH, 100, false, false), robot(World.SIZE - 1, World.SIZE - 1, NORTH, 100, false, false),
+                board[0], board[1], board[2], 0, schedule);
+    }
+
+    /**
+     * @param board the fuel board, as filled in by {@link World#copyFuel(long[])}
+     * @param turn  the number of turns committed, which decides the next barrel to spawn
+     */
+    static WorldState of(int red, int blue, long[] board, int turn, FuelSchedule schedule) {
+        return new WorldState(red, blue, board[0], board[1], board[2], turn, schedule);
+    }
+
+    /**
+     * @return a robot packed into an int
+     */
+    static int robot(int x, int y, int dir, int fuel, boolean shield, boolean dead) {
+        return x | (y << 4) | (dir << 8) | (shield ? SHIELD : 0) | (dead ? DEAD : 0) | (fuel << 16);
+    }
+
+    //----------------------------------------------------------------//
+    //                             TURNS                              //
+    //----------------------------------------------------------------//
+
+    /**
+     * Plays one turn.
+     *
+     * @param action1 the action of the red robot: a Robot.ACTION_ constant or NONE, plus
+     *                SHIELD_ON or SHIELD_OFF to change the shield before acting
+     * @param action2 the action of the blue robot, likewise
+     * @return the position after the turn, or the state itself if the game is already over
+     * @throws IllegalArgumentException if an action is not one of these
+     */
+    public static WorldState step(WorldState state, int action1, int action2) {
+        return state.isOver() ? state : state.play(action1, action2);
+    }
+
+    private WorldState play(int action1, int action2) {
+        Turn turn = new Turn(this);
+        turn.act(1, action1);
+        turn.act(2, action2);
+        turn.siphon(1);
+        turn.siphon(2);
+        return turn.commit();
+    }
+
+    /**
+     * A turn being played: the committed robots and the board as it changes, and the
+     * targets of the robots' pending actions, as in Robot.
+     */
+    private static final class Turn {
+
+        private final WorldState from;
+        private final int[] robots = new int[3];
+        private final int[] targetX = new int[3], targetY = new int[3], targetDir = new int[3], targetFuel = new int[3];
+        private final boolean[] siphon = new boolean[3]; // took fuel where there is no barrel
+        private final long[] board;
+
+        Turn(WorldState from) {
+            this.from = from;
+            robots[1] = from.red;
+            robots[2] = from.blue;
+            board = new long[]{from.fuel0, from.fuel1, from.fuel2};
+            for (int i = 1; i <= 2; i++) {
+                targetX[i] = x(robots[i]);
+                targetY[i] = y(robots[i]);
+                targetDir[i] = dir(robots[i]);
+                targetFuel[i] = fuel(robots[i]);
+            }
+        }
+
+        void act(int i, int action) {
+            if ((action & ~(ACTION_MASK | SHIELD_ON | SHIELD_OFF)) != 0 || (action & SHIELD_ON) != 0 && (action & SHIELD_OFF) != 0) {
+                throw new IllegalArgumentException("Unknown action " + action);
+            }
+            if ((action & SHIELD_ON) != 0) robots[i] |= SHIELD;
+            if ((action & SHIELD_OFF) != 0) robots[i] &= ~SHIELD;
+            int robot = robots[i];
+            int other = 3 - i;
+            int dir = dir(robot);
+            switch (action & ACTION_MASK) {
+                case NONE -> {
+                    return;
+                }
+                case Robot.ACTION_MOVE -> {
+                    int x = x(robot) + ((dir == EAST) ? 1 : (dir == WEST) ? -1 : 0);
+                    int y = y(robot) + ((dir == SOUTH) ? 1 : (dir == NORTH) ? -1 : 0);
+                    x = Math.min(World.SIZE - 1, Math.max(0, x));
+                    y = Math.min(World.SIZE - 1, Math.max(0, y));
+                    if (x != targetX[other] || y != targetY[other]) {
+                        targetX[i] = x;
+                        targetY[i] = y;
+                    }
+                }
+                case Robot.ACTION_TURN_LEFT -> targetDir[i] = (dir + 1) & 3;
+                case Robot.ACTION_TURN_RIGHT -> targetDir[i] = (dir + 3) & 3;
+                case Robot.ACTION_TURN_AROUND -> targetDir[i] = (dir + 2) & 3;
+                case Robot.ACTION_TAKE_FUEL, Robot.ACTION_WAIT -> {
+                }
+                default -> throw new IllegalArgumentException("Unknown action " + action);
+            }
+            processFuel(i, action & ACTION_MASK);
+        }
+
+        /**
+         * Works out the fuel the robot will have after the action, see Robot.processFuel.
+         */
+        private void processFuel(int i, int action) {
+            int robot = robots[i];
+            int fuel = fuel(robot);
+            switch (action) {
+                case Robot.ACTION_MOVE -> fuel -= FUEL_MOVE;
+                case Robot.ACTION_TURN_LEFT, Robot.ACTION_TURN_RIGHT, Robot.ACTION_TURN_AROUND -> fuel -= FUEL_TURN;
+                case Robot.ACTION_WAIT -> fuel -= FUEL_IDLE;
+                case Robot.ACTION_TAKE_FUEL -> {
+                    int cell = y(robot) * World.SIZE + x(robot);
+                    long bit = 1L << cell;
+                    if ((board[cell >>> 6] & bit) != 0) {
+                        board[cell >>> 6] &= ~bit;
+                        targetFuel[i] = 100;
+                        return;
+                    }
+                    targetFuel[i] = fuel;
+                    siphon[i] = true;
+                    return;
+                }
+            }
+            if ((robot & SHIELD) != 0) fuel -= FUEL_SHIELD;
+            targetFuel[i] = fuel;
+        }
+
+        /**
+         * Siphons from the other robot if the robot took fuel where there is no barrel, once
+         * both robots have acted, see Robot.siphon.
+         */
+        void siphon(int i) {
+            if (!siphon[i]) return;
+            int robot = robots[i];
+            int other = robots[3 - i];
+            if ((other & SHIELD) == 0 && relativeLR(robot, x(other), y(other)) == 0 && relativeFB(robot, x(other), y(other)) == 1) {
+                int take = Math.min(25, targetFuel[3 - i] / 2);
+                take = Math.min(targetFuel[3 - i], take);
+                targetFuel[i] = Math.min(100, targetFuel[i] + take);
+                targetFuel[3 - i] -= take;
+                return;
+            }
+            targetFuel[i] -= FUEL_IDLE;
+            if ((robot & SHIELD) != 0) targetFuel[i] -= FUEL_SHIELD;
+        }
+
+        /**
+         * Commits the turn, unless a robot is out of fuel, see MatchEngine.outOfFuel.
+         */
+        WorldState commit() {
+            boolean out = false;
+            for (int i = 1; i <= 2; i++) {
+                if (fuel(robots[i]) <= 0 || targetFuel[i] < 0) {
+                    robots[i] |= DEAD;
+                    out = true;
+                }
+            }
+            if (out) return new WorldState(robots[1], robots[2], board[0], board[1], board[2], from.turn, from.schedule);
+
+            int cell = from.schedule.getCell(from.turn + 2);
+            if (cell != FuelSchedule.NONE) board[cell >>> 6] |= 1L << cell;
+            for (int i = 1; i <= 2; i++) {
+                boolean dead = targetFuel[i] <= 0;
+                robots[i] = robot(targetX[i], targetY[i], targetDir[i], targetFuel[i], (robots[i] & SHIELD) != 0, dead);
+            }
+            return new WorldState(robots[1], robots[2], board[0], board[1], board[2], from.turn + 1, from.schedule);
+        }
+    }
+
+    //----------------------------------------------------------------//
+    //                            QUERIES                             //
+    //----------------------------------------------------------------//
+
+    /**
+     * @return the number of turns committed
+     */
+    public int getTurn() {
+        return turn;
+    }
+
+    public FuelSchedule getSchedule() {
+        return schedule;
+    }
+
+    /**
+     * @return whether a robot has run out of fuel, which ends the game
+     */
+    public boolean isOver() {
+        return ((red | blue) & DEAD) != 0;
+    }
+
+    /**
+     * @return 1 or 2 for the winning robot, or 0 for a draw, by the rules of MatchEngine.Result
+     * if the game ended here
+     */
+    public int getWinner() {
+        boolean dead1 = isDead(1), dead2 = isDead(2);
+        if (dead1 != dead2) return dead1 ? 2 : 1;
+        if (dead1 || getFuel(1) == getFuel(2)) return 0;
+        return (getFuel(1) > getFuel(2)) ? 1 : 2;
+    }
+
+    /**
+     * @param robot 1 for red, 2 for blue
+     */
+    public int getX(int robot) {
+        return x(packed(robot));
+    }
+
+    public int getY(int robot) {
+        return y(packed(robot));
+    }
+
+    /**
+     * @return NORTH, WEST, SOUTH or EAST
+     */
+    public int getDir(int robot) {
+        return dir(packed(robot));
+    }
+
+    public int getFuel(int robot) {
+        return fuel(packed(robot));
+    }
+
+    public boolean isShieldOn(int robot) {
+        return (packed(robot) & SHIELD) != 0;
+    }
+
+    public boolean isDead(int robot) {
+        return (packed(robot) & DEAD) != 0;
+    }
+
+    /**
+     * @return whether there is a barrel at (x, y)
+     */
+    public boolean hasFuel(int x, int y) {
+        int cell = y * World.SIZE + x;
+        return (word(cell >>> 6) & (1L << cell)) != 0;
+    }
+
+    /**
+     * Copies the fuel board into the given array of World.FUEL_WORDS longs, to be read with
+     * {@link World#nextFuel(long[], int)}.
+     */
+    public void copyFuel(long[] board) {
+        board[0] = fuel0;
+        board[1] = fuel1;
+        board[2] = fuel2;
+    }
+
+    /**
+     * @return the number of barrels on the board
+     */
+    public int getBarrelCount() {
+        return Long.bitCount(fuel0) + Long.bitCount(fuel1) + Long.bitCount(fuel2);
+    }
+
+    private int packed(int robot) {
+        if (robot != 1 && robot != 2) throw new IllegalArgumentException("No robot " + robot);
+        return (robot == 1) ? red : blue;
+    }
+
+    private long word(int word) {
+        return (word == 0) ? fuel0 : (word == 1) ? fuel1 : fuel2;
+    }
+
+    private static int x(int robot) {
+        return robot & 0xF;
+    }
+
+    private static int y(int robot) {
+        return (robot >> 4) & 0xF;
+    }
+
+    private static int dir(int robot) {
+        return (robot >> 8) & 3;
+    }
+
+    private static int fuel(int robot) {
+        return robot >> 16;
+    }
+
+    /**
+     * @return the left-right offset of (x, y) from the robot, see Robot.relativeLR
+     */
+    private static int relativeLR(int robot, int x, int y) {
+        return switch (dir(robot)) {
+            case NORTH -> x - x(robot);
+            case SOUTH -> x(robot) - x;
+            case WEST -> y(robot) - y;
+            default -> y - y(robot);
+        };
+    }
+
+    /**
+     * @return the front-back offset of (x, y) from the robot, see Robot.relativeFB
+     */
+    private static int relativeFB(int robot, int x, int y) {
+        return switch (dir(robot)) {
+            case NORTH -> y(robot) - y;
+            case SOUTH -> y - y(robot);
+            case WEST -> x(robot) - x;
+            default -> x - x(robot);
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof WorldState other && red == other.red && blue == other.blue && fuel0 == other.fuel0
+                && fuel1 == other.fuel1 && fuel2 == other.fuel2 && turn == other.turn && schedule == other.schedule;
+    }
+
+    @Override
+    public int hashCode() {
+        long hash = red * 31L + blue;
+        hash = hash * 31 + fuel0;
+        hash = hash * 31 + fuel1;
+        hash = hash * 31 + fuel2;
+        return (int) (hash ^ (hash >>> 32)) * 31 + turn;
+    }
+
+    @Override
+    public String toString() {
+        return "turn " + turn + ": " + format(1) + ", " + format(2) + ", " + getBarrelCount() + " barrels";
+    }
+
+    private String format(int robot) {
+        return String.format("%s @(%d,%d) dir:%s fuel:%d%s%s", (robot == 1) ? "red" : "blue", getX(robot), getY(robot),
+                new String[]{"NORTH", "WEST", "SOUTH", "EAST"}[getDir(robot)], getFuel(robot),
+                isShieldOn(robot) ? " shielded" : "", isDead(robot) ? " dead" : "");
+    }
+}
@@ -0,0 +1,232 @@
+package main;
+
+import nodes.interfaces.ProgramNode;
+import nodes.interpreter.StepInterpreter;
+import util.exepeptions.ParserFailureException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Checks that {@link WorldState#step} plays turns exactly as a World does, and times it.
+ * <p>
+ * Every pair of programs in a directory plays a number of matches, turn by turn as a
+ * SteppedMatch plays them, and the actions the programs take are played on a WorldState
+ * alongside. After every turn the World's snapshot must equal the WorldState. A game is
+ * compared until one of its programs ends, as a robot whose program has ended is not
+ * modelled. Files that do not parse, like the bad examples, are skipped. Games of random
+ * actions, which meet, siphon and run out of fuel far more often than the programs do, are
+ * compared the same way. Then times random games played on WorldStates alone.
+ * <p>
+ * Usage: WorldStateTester [directory] [games]
+ */
+public class WorldStateTester {
+
+    private static final int RANDOM_GAMES = 2000;
+    private static final int TIMED_TURNS = 20_000_000;
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Path.of((args.length > 0) ? args[0] : RoboGame.CODE_DIRECTORY);
+        int games = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+        List<String> names = new ArrayList<>();
+        List<ProgramNode> programs = new ArrayList<>();
+        try (Stream<Path> list = Files.list(directory)) {
+            for (Path file : list.filter(f -> f.toString().endsWith(".prog")).sorted().toList()) {
+                try {
+                    ProgramNode program = ProgramCache.shared().load(file).getOptimized();
+                    if (program == null) continue;
+                    names.add(file.getFileName().toString());
+                    programs.add(program);
+                } catch (ParserFailureException e) {
+                    // the bad examples are there to be rejected
+                }
+            }
+        }
+        DebugLog.setLevel(DebugLog.Level.OFF); // the robots would log every action
+
+        int passed = 0, failed = 0;
+        long turns = 0;
+        for (int red = 0; red < programs.size(); red++) {
+            for (int blue = 0; blue < programs.size(); blue++) {
+                String match = names.get(red) + " vs " + names.get(blue);
+                boolean ok = true;
+                for (int seed = 0; seed < games && ok; seed++) {
+                    try {
+                        turns += play(programs.get(red), programs.get(blue), seed);
+                    } catch (IllegalStateException e) {
+                        System.out.println("&& BAD on " + match + ", seed " + seed + ": " + e.getMessage());
+                        ok = false;
+                    }
+                }
+                if (ok) {
+                    passed++;
+                    System.out.println("&& OK on " + match);
+                } else {
+                    failed++;
+                }
+            }
+        }
+        System.out.printf("%d matches passed, %d failed, %d turns compared%n", passed, failed, turns);
+
+        turns = 0;
+        try {
+            for (int seed = 0; seed < RANDOM_GAMES; seed++) turns += playRandom(seed);
+            System.out.println("&& OK on " + RANDOM_GAMES + " random games, " + turns + " turns compared");
+        } catch (IllegalStateException e) {
+            System.out.println("&& BAD on random games: " + e.getMessage());
+            failed++;
+        }
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            long played = playTimed(TIMED_TURNS);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Random games: %d turns in %.2f s, %.1f million positions/s%n", played, seconds, played / seconds / 1e6);
+        }
+        if (failed > 0) System.exit(1);
+    }
+
+    /**
+     * Plays a match on a World and a WorldState side by side.
+     *
+     * @return the number of turns compared
+     * @throws IllegalStateException if the two differ
+     */
+    private static int play(ProgramNode redProgram, ProgramNode blueProgram, long seed) {
+        World world = new World(new FuelSchedule(seed, MatchEngine.DEFAULT_MAX_TURNS));
+        Robot[] robots = {null, world.getRobot(1), world.getRobot(2)};
+        robots[1].setProgram(redProgram);
+        robots[2].setProgram(blueProgram);
+        world.startStepped();
+        StepInterpreter[] interpreters = {null, new StepInterpreter(redProgram, robots[1]), new StepInterpreter(blueProgram, robots[2])};
+        WorldState state = world.snapshot();
+        if (!state.equals(WorldState.start(state.getSchedule()))) throw new IllegalStateException("Starts at " + state);
+        int turns = 0;
+        try {
+            while (turns < MatchEngine.DEFAULT_MAX_TURNS) {
+                int[] actions = new int[3];
+                for (int i = 1; i <= 2; i++) {
+                    robots[i].resumeStepped();
+                    int action = interpreters[i].step(SteppedMatch.DEFAULT_BUDGET);
+                    if (action == StepInterpreter.FINISHED) return turns; // not modelled from here on
+                    boolean shield = robots[i].isShieldOn();
+                    if (shield != state.isShieldOn(i)) action |= shield ? WorldState.SHIELD_ON : WorldState.SHIELD_OFF;
+                    actions[i] = action;
+                }
+                state = commit(world, state, actions);
+                turns++;
+                if (state.isOver()) break;
+            }
+            return turns;
+        } finally {
+            world.reset();
+        }
+    }
+
+    /**
+     * Plays a match of random actions, from the robots face to face in the middle, on a
+     * World and a WorldState side by side.
+     *
+     * @return the number of turns compared
+     * @throws IllegalStateException if the two differ
+     */
+    private static int playRandom(long seed) {
+        Random random = new Random(seed);
+        int x = random.nextInt(World.SIZE);
+        World world = new World(new FuelSchedule(seed, MatchEngine.DEFAULT_MAX_TURNS)) {
+            {
+                // red faces south and blue north, either side of the middle
+                robots = new Robot[]{null, new Robot(this, x, World.SIZE / 2 - 1, "red", false), new Robot(this, x, World.SIZE / 2, "blue", false)};
+            }
+        };
+        Robot[] robots = {null, world.getRobot(1), world.getRobot(2)};
+        world.startStepped();
+        WorldState state = world.snapshot();
+        int turns = 0;
+        try {
+            while (turns < MatchEngine.DEFAULT_MAX_TURNS) {
+                int[] actions = new int[3];
+                for (int i = 1; i <= 2; i++) {
+                    robots[i].resumeStepped();
+                    if (random.nextInt(8) == 0) {
+                        boolean shield = !robots[i].isShieldOn();
+                        robots[i].setShield(shield);
+                        actions[i] = shield ? WorldState.SHIELD_ON : WorldState.SHIELD_OFF;
+                    }
+                    int action = random.nextInt(10);
+                    switch (action) {
+                        case Robot.ACTION_MOVE, 7, 8 -> { // mostly moves and siphons, so the robots meet
+                            action = Robot.ACTION_MOVE;
+                            robots[i].move();
+                        }
+                        case Robot.ACTION_TURN_LEFT -> robots[i].turnLeft();
+                        case Robot.ACTION_TURN_RIGHT -> robots[i].turnRight();
+                        case Robot.ACTION_TURN_AROUND -> robots[i].turnAround();
+                        case Robot.ACTION_TAKE_FUEL, 9 -> {
+                            action = Robot.ACTION_TAKE_FUEL;
+                            robots[i].takeFuel();
+                        }
+                        case Robot.ACTION_WAIT -> robots[i].idleWait();
+                        default -> action = WorldState.NONE; // sits the turn out
+                    }
+                    actions[i] |= action;
+                }
+                state = commit(world, state, actions);
+                turns++;
+                if (state.isOver()) break;
+            }
+            return turns;
+        } finally {
+            world.reset();
+        }
+    }
+
+    /**
+     * Commits a turn the robots have acted in, as SteppedMatch does, and plays the same
+     * actions on the state.
+     *
+     * @return the state after the turn
+     * @throws IllegalStateException if it differs from the World after the turn
+     */
+    private static WorldState commit(World world, WorldState state, int[] actions) {
+        world.resolveActions();
+        boolean over = MatchEngine.outOfFuel(world.getRobot(1), world.getRobot(2));
+        if (!over) {
+            world.updateWorld();
+            over = MatchEngine.outOfFuel(world.getRobot(1), world.getRobot(2));
+        }
+        WorldState expected = world.snapshot();
+        WorldState next = WorldState.step(state, actions[1], actions[2]);
+        if (!next.equals(expected) || next.isOver() != over) {
+            throw new IllegalStateException("Turn " + (state.getTurn() + 1) + " from " + state + " with actions " + actions[1] + " and " + actions[2]
+                    + " is " + next + ", the World has " + expected);
+        }
+        return next;
+    }
+
+    /**
+     * Plays games of random actions from the start, a new game each time one ends.
+     *
+     * @return the number of turns played
+     */
+    private static long playTimed(int turns) {
+        long random = 42;
+        WorldState start = WorldState.start(new FuelSchedule(0, MatchEngine.DEFAULT_MAX_TURNS));
+        WorldState state = start;
+        for (int i = 0; i < turns; i++) {
+            random ^= random << 13;
+            random ^= random >>> 7;
+            random ^= random << 17;
+            int red = 1 + (int) ((random >>> 1) % 6), blue = 1 + (int) ((random >>> 33) % 6);
+            if ((random & 0xF) == 0) red |= state.isShieldOn(1) ? WorldState.SHIELD_OFF : WorldState.SHIELD_ON;
+            state = WorldState.step(state, red, blue);
+            if (state.isOver() || state.getTurn() == MatchEngine.DEFAULT_MAX_TURNS) state = start;
+        }
+        return turns;
+    }
+}
@@ -5,6 +5,7 @@ import nodes.interfaces.ProgramNode;
 import util.exepeptions.RobotInterruptedException;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class BlockNode implements ProgramNode {
@@ -21,6 +22,10 @@ public class BlockNode implements ProgramNode {
         this.statements = new ArrayList<>(statements);
     }
 
+    public List<ProgramNode> getStatements() {
+        return Collections.unmodifiableList(statements);
+    }
+
     /**
      * Executes all statements within this block in sequence.
      * <p>
@@ -18,6 +18,10 @@ public class LoopNode implements ProgramNode {
         this.body = body;
     }
 
+    public BlockNode getBody() {
+        return body;
+    }
+
     @Override
     public String toString() {
         return "loop: " + body;
@@ -26,6 +30,7 @@ public class LoopNode implements ProgramNode {
     @Override
     public void execute(Robot robot) throws RobotInterruptedException {
         while (!robot.isDead()) {
+            robot.onLoopPass();
             body.execute(robot);
         }
     }
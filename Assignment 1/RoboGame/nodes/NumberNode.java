@@ -11,8 +11,17 @@ public class NumberNode implements ExpressionNode {
         this.value = value;
     }
 
+    public int getValue() {
+        return value;
+    }
+
     @Override
     public int evaluate(Robot robot) {
         return value;
     }
+
+    @Override
+    public String toString() {
+        return String.valueOf(value);
+    }
 }
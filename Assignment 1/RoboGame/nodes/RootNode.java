@@ -0,0 +1,59 @@
+package nodes;
+
+import main.ExecutionContext;
+import main.Robot;
+import nodes.interfaces.ProgramNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents a whole parsed program: the top-level statements, executed in order.
+ * <p>
+ * Unlike a {@link BlockNode}, the top level keeps going after the robot has died;
+ * the world stops the robot instead. The root also knows how many variable slots the
+ * program uses, and starts every run with all of them at 0 in the robot's {@link ExecutionContext}.
+ */
+public class RootNode implements ProgramNode {
+
+    private final List<ProgramNode> statements;
+    private final int variableCount;
+
+    public RootNode(List<ProgramNode> statements) {
+        this(statements, 0);
+    }
+
+    /**
+     * @param variableCount the number of variable slots used by the statements
+     */
+    public RootNode(List<ProgramNode> statements, int variableCount) {
+        this.statements = new ArrayList<>(statements);
+        this.variableCount = variableCount;
+    }
+
+    public List<ProgramNode> getStatements() {
+        return Collections.unmodifiableList(statements);
+    }
+
+    public int getVariableCount() {
+        return variableCount;
+    }
+
+    @Override
+    public void execute(Robot robot) {
+        robot.getContext().reset(variableCount);
+        for (ProgramNode statement : statements) {
+            statement.execute(robot);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (ProgramNode statement : statements) {
+            builder.append(statement.toString()).append("\n");
+        }
+        return builder.toString();
+    }
+}
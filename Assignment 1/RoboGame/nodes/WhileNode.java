@@ -18,6 +18,14 @@ public class WhileNode implements ProgramNode {
         this.block = block;
     }
 
+    public BooleanNode getCondition() {
+        return conditional;
+    }
+
+    public BlockNode getBlock() {
+        return block;
+    }
+
     /**
      * Executes the block node while the conditional is true
      *
@@ -26,7 +34,13 @@ public class WhileNode implements ProgramNode {
     @Override
     public void execute(Robot robot) {
         while (conditional.evaluate(robot)) {
+            robot.onLoopPass();
             block.execute(robot);
         }
     }
+
+    @Override
+    public String toString() {
+        return "while " + conditional + ": " + block;
+    }
 }
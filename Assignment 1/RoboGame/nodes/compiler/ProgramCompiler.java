@@ -0,0 +1,341 @@
+package nodes.compiler;
+
+import nodes.BlockNode;
+import nodes.LoopNode;
+import nodes.NumberNode;
+import nodes.RootNode;
+import nodes.WhileNode;
+import nodes.conditionals.BooleanConstantNode;
+import nodes.conditionals.IfNode;
+import nodes.conditionals.logic.AndNode;
+import nodes.conditionals.logic.NotNode;
+import nodes.conditionals.logic.OrNode;
+import nodes.conditionals.relops.EqualNode;
+import nodes.conditionals.relops.GreaterThanNode;
+import nodes.conditionals.relops.LessThanNode;
+import nodes.expressions.AddNode;
+import nodes.expressions.DivideNode;
+import nodes.expressions.MultiplyNode;
+import nodes.expressions.SubtractNode;
+import nodes.interfaces.BooleanNode;
+import nodes.interfaces.ExpressionNode;
+import nodes.interfaces.ProgramNode;
+import nodes.movement.*;
+import nodes.sensors.SensorNode;
+import nodes.variables.AssignmentNode;
+import nodes.variables.VariableNode;
+
+import javax.tools.*;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Optional execution backend that compiles a parsed program into a JVM class.
+ * <p>
+ * The tree is translated into the body of a single generated {@code execute} method:
+ * loops, if/while branches, relational operators and sensor reads become plain Java
+ * statements and calls on the robot, so the JIT sees straight-line code instead of a
+ * chain of virtual {@code execute}/{@code evaluate} calls. The source is compiled in
+ * memory with the platform compiler, so this backend needs a JDK rather than a JRE.
+ * <p>
+ * Nodes the compiler does not know about are kept as constants of the generated class
+ * and called through their own {@code execute}/{@code evaluate}, so compiling never
+ * changes what a program does.
+ */
+public class ProgramCompiler {
+
+    private static final String PACKAGE = "nodes.compiler";
+    private static final AtomicInteger CLASS_COUNTER = new AtomicInteger();
+
+    private final StringBuilder code = new StringBuilder();
+    private final List<Object> constants = new ArrayList<>();
+    private int indent;
+    private int labels;
+    private int slots; // variable slots used by the program
+
+    /**
+     * @return whether a system Java compiler is available to this JVM
+     */
+    public static boolean isAvailable() {
+        return ToolProvider.getSystemJavaCompiler() != null;
+    }
+
+    /**
+     * Compiles the given program into a new class implementing {@link ProgramNode}.
+     *
+     * @param program the parsed program
+     * @return a compiled program with the same behaviour and string form as the original
+     * @throws IllegalStateException if no Java compiler is available or compilation fails
+     */
+    public static ProgramNode compile(ProgramNode program) {
+        return new ProgramCompiler().compileProgram(program);
+    }
+
+    private ProgramNode compileProgram(ProgramNode program) {
+        String className = "CompiledProgram" + CLASS_COUNTER.incrementAndGet();
+        String source = generate(className, program);
+        byte[] bytecode = javac(className, source);
+
+        try {
+            Class<?> type = new ProgramClassLoader().define(PACKAGE + "." + className, bytecode);
+            return (ProgramNode) type.getConstructor(Object[].class).newInstance((Object) constants.toArray());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not load compiled program", e);
+        }
+    }
+
+    //----------------------------------------------------------------//
+    //                       SOURCE GENERATION                        //
+    //----------------------------------------------------------------//
+
+    private String generate(String className, ProgramNode program) {
+        int self = constant(program);
+        line("package " + PACKAGE + ";");
+        line("");
+        line("public final class " + className + " implements nodes.interfaces.ProgramNode {");
+        indent++;
+        line("private final Object[] k;");
+        line("");
+        line("public " + className + "(Object[] k) {");
+        line("    this.k = k;");
+        line("}");
+        line("");
+        line("@Override");
+        line("public void execute(main.Robot robot) {");
+        indent++;
+        int header = code.length();
+        if (program instanceof RootNode root) slots = root.getVariableCount();
+        statement(program);
+        // the variables are a local array, so each read or write is a plain array access
+        code.insert(header, "    ".repeat(indent) + "int[] vars = robot.getContext().reset(" + slots + ");\n");
+        indent--;
+        line("}");
+        line("");
+        line("@Override");
+        line("public String toString() {");
+        line("    return k[" + self + "].toString();");
+        line("}");
+        indent--;
+        line("}");
+        return code.toString();
+    }
+
+    private void statement(ProgramNode node) {
+        if (node instanceof RootNode root) {
+            for (ProgramNode statement : root.getStatements()) {
+                statement(statement);
+            }
+        } else if (node instanceof BlockNode block) {
+            block(block);
+        } else if (node instanceof LoopNode loop) {
+            line("while (!robot.isDead()) {");
+            indent++;
+            line("robot.onLoopPass();");
+            block(loop.getBody());
+            indent--;
+            line("}");
+        } else if (node instanceof WhileNode whileNode) {
+            // Not "while (cond)": javac rejects the loop when cond is a constant false, or
+            // the statements after it when cond is a constant true
+            line("while (true) {");
+            indent++;
+            line("if (!" + condition(whileNode.getCondition()) + ") break;");
+            line("robot.onLoopPass();");
+            block(whileNode.getBlock());
+            indent--;
+            line("}");
+        } else if (node instanceof IfNode ifNode) {
+            line("if (" + condition(ifNode.getCondition()) + ") {");
+            indent++;
+            block(ifNode.getBlock());
+            indent--;
+            if (ifNode.getElseBlock() != null) {
+                line("} else {");
+                indent++;
+                block(ifNode.getElseBlock());
+                indent--;
+            }
+            line("}");
+        } else if (node instanceof AssignmentNode assignment) {
+            line(variable(assignment.getVariable()) + " = " + expression(assignment.getValue()) + ";");
+        } else if (node instanceof MoveNode move) {
+            repeat(move.getCount(), "robot.move();");
+        } else if (node instanceof TurnLNode) {
+            line("robot.turnLeft();");
+        } else if (node instanceof TurnRNode) {
+            line("robot.turnRight();");
+        } else if (node instanceof TurnAroundNode) {
+            line("robot.turnAround();");
+        } else if (node instanceof ShieldOnNode) {
+            line("robot.setShield(true);");
+        } else if (node instanceof ShieldOffNode) {
+            line("robot.setShield(false);");
+        } else if (node instanceof TakeFuelNode) {
+            line("robot.takeFuel();");
+        } else if (node instanceof WaitNode wait) {
+            repeat(wait.getCount(), "robot.idleWait();");
+        } else {
+            line("((nodes.interfaces.ProgramNode) k[" + constant(node) + "]).execute(robot);");
+        }
+    }
+
+    /**
+     * A block stops early once the robot is dead, see {@link BlockNode#execute}.
+     */
+    private void block(BlockNode block) {
+        List<ProgramNode> statements = block.getStatements();
+        String label = "block" + labels++;
+        line(label + ": {");
+        indent++;
+        for (int i = 0; i < statements.size(); i++) {
+            statement(statements.get(i));
+            if (i < statements.size() - 1) {
+                line("if (robot.isDead()) break " + label + ";");
+            }
+        }
+        indent--;
+        line("}");
+    }
+
+    /**
+     * An action with a count stops early once the robot is dead, see {@link MoveNode#execute}.
+     */
+    private void repeat(ExpressionNode count, String action) {
+        if (count == null) {
+            line(action);
+            return;
+        }
+        String i = "i" + labels, n = "n" + labels++;
+        line("for (int " + i + " = 0, " + n + " = " + expression(count) + "; " + i + " < " + n + " && !robot.isDead(); " + i + "++) {");
+        line("    " + action);
+        line("}");
+    }
+
+    private String condition(BooleanNode node) {
+        if (node instanceof LessThanNode lt) {
+            return "(" + expression(lt.getLeft()) + " < " + expression(lt.getRight()) + ")";
+        } else if (node instanceof GreaterThanNode gt) {
+            return "(" + expression(gt.getLeft()) + " > " + expression(gt.getRight()) + ")";
+        } else if (node instanceof EqualNode eq) {
+            return "(" + expression(eq.getLeft()) + " == " + expression(eq.getRight()) + ")";
+        } else if (node instanceof AndNode and) {
+            return "(" + condition(and.getLeft()) + " && " + condition(and.getRight()) + ")";
+        } else if (node instanceof OrNode or) {
+            return "(" + condition(or.getLeft()) + " || " + condition(or.getRight()) + ")";
+        } else if (node instanceof NotNode not) {
+            return "(!" + condition(not.getCondition()) + ")";
+        } else if (node instanceof BooleanConstantNode constant) {
+            return "(" + constant.getValue() + ")";
+        }
+        return "((nodes.interfaces.BooleanNode) k[" + constant(node) + "]).evaluate(robot)";
+    }
+
+    private String expression(ExpressionNode node) {
+        if (node instanceof NumberNode number) {
+            return "(" + number.getValue() + ")";
+        } else if (node instanceof AddNode add) {
+            return "(" + expression(add.getLeft()) + " + " + expression(add.getRight()) + ")";
+        } else if (node instanceof SubtractNode sub) {
+            return "(" + expression(sub.getLeft()) + " - " + expression(sub.getRight()) + ")";
+        } else if (node instanceof MultiplyNode mul) {
+            return "(" + expression(mul.getLeft()) + " * " + expression(mul.getRight()) + ")";
+        } else if (node instanceof DivideNode div) {
+            return "(" + expression(div.getLeft()) + " / " + expression(div.getRight()) + ")";
+        } else if (node instanceof VariableNode variable) {
+            return "(" + variable(variable) + ")";
+        } else if (node instanceof SensorNode sensor) {
+            ExpressionNode index = sensor.getBarrelIndex();
+            return switch (sensor.getSensorType()) {
+                case FUEL_LEFT -> "robot.getFuel()";
+                case OPP_LR -> "robot.getOpponentLR()";
+                case OPP_FB -> "robot.getOpponentFB()";
+                case NUM_BARRELS -> "robot.numBarrels()";
+                case BARREL_LR -> (index == null) ? "robot.getClosestBarrelLR()" : "robot.getBarrelLR(" + expression(index) + ")";
+                case BARREL_FB -> (index == null) ? "robot.getClosestBarrelFB()" : "robot.getBarrelFB(" + expression(index) + ")";
+                case WALL_DIST -> "robot.getDistanceToWall()";
+            };
+        }
+        return "((nodes.interfaces.ExpressionNode) k[" + constant(node) + "]).evaluate(robot)";
+    }
+
+    private String variable(VariableNode variable) {
+        slots = Math.max(slots, variable.getSlot() + 1);
+        return "vars[" + variable.getSlot() + "]";
+    }
+
+    private int constant(Object value) {
+        constants.add(value);
+        return constants.size() - 1;
+    }
+
+    private void line(String text) {
+        code.append("    ".repeat(indent)).append(text).append('\n');
+    }
+
+    //----------------------------------------------------------------//
+    //                          COMPILATION                           //
+    //----------------------------------------------------------------//
+
+    private static byte[] javac(String className, String source) {
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if (javac == null) throw new IllegalStateException("No Java compiler available, run on a JDK");
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        InMemoryFileManager files = new InMemoryFileManager(javac.getStandardFileManager(diagnostics, null, null));
+        JavaFileObject unit = new SimpleJavaFileObject(URI.create("string:///" + className + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        List<String> options = List.of("-classpath", System.getProperty("java.class.path"), "-g:none");
+        if (!javac.getTask(null, files, diagnostics, options, null, List.of(unit)).call()) {
+            throw new IllegalStateException("Compiling program failed: " + diagnostics.getDiagnostics());
+        }
+        return files.classes.get(PACKAGE + "." + className).toByteArray();
+    }
+
+    /**
+     * Keeps the compiled class files in memory instead of writing them to disk.
+     */
+    private static class InMemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+        private final Map<String, ByteArrayOutputStream> classes = new HashMap<>();
+
+        InMemoryFileManager(StandardJavaFileManager fileManager) {
+            super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            classes.put(className, bytes);
+            return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+                @Override
+                public OutputStream openOutputStream() {
+                    return bytes;
+                }
+            };
+        }
+    }
+
+    /**
+     * One loader per program, so a compiled program can be unloaded once it is no longer used.
+     */
+    private static class ProgramClassLoader extends ClassLoader {
+
+        ProgramClassLoader() {
+            super(ProgramCompiler.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytecode) {
+            return defineClass(name, bytecode, 0, bytecode.length);
+        }
+    }
+}
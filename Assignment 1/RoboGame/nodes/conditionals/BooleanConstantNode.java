@@ -0,0 +1,30 @@
+package nodes.conditionals;
+
+import main.Robot;
+import nodes.interfaces.BooleanNode;
+
+/**
+ * A condition with a fixed value, produced when a condition is folded by the optimizer.
+ */
+public class BooleanConstantNode implements BooleanNode {
+
+    private final boolean value;
+
+    public BooleanConstantNode(boolean value) {
+        this.value = value;
+    }
+
+    public boolean getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean evaluate(Robot robot) {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(value);
+    }
+}
@@ -28,6 +28,21 @@ public class IfNode implements ProgramNode {
         this.elseBlock = elseBlock;
     }
 
+    public BooleanNode getCondition() {
+        return condition;
+    }
+
+    public BlockNode getBlock() {
+        return block;
+    }
+
+    /**
+     * @return the else block, or null if there is none
+     */
+    public BlockNode getElseBlock() {
+        return elseBlock;
+    }
+
     @Override
     public void execute(Robot robot) {
         if (condition.evaluate(robot)) {
@@ -39,6 +54,6 @@ public class IfNode implements ProgramNode {
 
     @Override
     public String toString() {
-        return "IF : " + condition.toString();
+        return "IF : " + condition.toString() + " " + block + ((elseBlock != null) ? " ELSE " + elseBlock : "");
     }
 }
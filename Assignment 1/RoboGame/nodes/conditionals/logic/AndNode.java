@@ -0,0 +1,37 @@
+package nodes.conditionals.logic;
+
+import main.Robot;
+import nodes.interfaces.BooleanNode;
+
+/**
+ * AndNode is a node that represents the conjunction of two conditions.
+ * The right condition is only evaluated if the left one is true.
+ */
+public class AndNode implements BooleanNode {
+
+    private final BooleanNode left;
+    private final BooleanNode right;
+
+    public AndNode(BooleanNode left, BooleanNode right) {
+        this.left = left;
+        this.right = right;
+    }
+
+    public BooleanNode getLeft() {
+        return left;
+    }
+
+    public BooleanNode getRight() {
+        return right;
+    }
+
+    @Override
+    public boolean evaluate(Robot robot) {
+        return left.evaluate(robot) && right.evaluate(robot);
+    }
+
+    @Override
+    public String toString() {
+        return "(" + left.toString() + " and " + right.toString() + ")";
+    }
+}
@@ -0,0 +1,30 @@
+package nodes.conditionals.logic;
+
+import main.Robot;
+import nodes.interfaces.BooleanNode;
+
+/**
+ * NotNode is a node that represents the negation of a condition
+ */
+public class NotNode implements BooleanNode {
+
+    private final BooleanNode condition;
+
+    public NotNode(BooleanNode condition) {
+        this.condition = condition;
+    }
+
+    public BooleanNode getCondition() {
+        return condition;
+    }
+
+    @Override
+    public boolean evaluate(Robot robot) {
+        return !condition.evaluate(robot);
+    }
+
+    @Override
+    public String toString() {
+        return "not " + condition.toString();
+    }
+}
@@ -0,0 +1,37 @@
+package nodes.conditionals.logic;
+
+import main.Robot;
+import nodes.interfaces.BooleanNode;
+
+/**
+ * OrNode is a node that represents the disjunction of two conditions.
+ * The right condition is only evaluated if the left one is false.
+ */
+public class OrNode implements BooleanNode {
+
+    private final BooleanNode left;
+    private final BooleanNode right;
+
+    public OrNode(BooleanNode left, BooleanNode right) {
+        this.left = left;
+        this.right = right;
+    }
+
+    public BooleanNode getLeft() {
+        return left;
+    }
+
+    public BooleanNode getRight() {
+        return right;
+    }
+
+    @Override
+    public boolean evaluate(Robot robot) {
+        return left.evaluate(robot) || right.evaluate(robot);
+    }
+
+    @Override
+    public String toString() {
+        return "(" + left.toString() + " or " + right.toString() + ")";
+    }
+}
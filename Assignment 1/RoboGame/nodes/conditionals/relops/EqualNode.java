@@ -17,6 +17,14 @@ public class EqualNode implements BooleanNode {
         this.right = right;
     }
 
+    public ExpressionNode getLeft() {
+        return left;
+    }
+
+    public ExpressionNode getRight() {
+        return right;
+    }
+
     @Override
     public boolean evaluate(Robot robot) {
         return left.evaluate(robot) == right.evaluate(robot);
@@ -0,0 +1,36 @@
+package nodes.expressions;
+
+import main.Robot;
+import nodes.interfaces.ExpressionNode;
+
+/**
+ * AddNode is a node that represents an addition
+ */
+public class AddNode implements ExpressionNode {
+
+    private final ExpressionNode left;
+    private final ExpressionNode right;
+
+    public AddNode(ExpressionNode left, ExpressionNode right) {
+        this.left = left;
+        this.right = right;
+    }
+
+    public ExpressionNode getLeft() {
+        return left;
+    }
+
+    public ExpressionNode getRight() {
+        return right;
+    }
+
+    @Override
+    public int evaluate(Robot robot) {
+        return left.evaluate(robot) + right.evaluate(robot);
+    }
+
+    @Override
+    public String toString() {
+        return "(" + left.toString() + " plus " + right.toString() + ")";
+    }
+}
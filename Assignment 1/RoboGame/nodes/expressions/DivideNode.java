@@ -0,0 +1,37 @@
+package nodes.expressions;
+
+import main.Robot;
+import nodes.interfaces.ExpressionNode;
+
+/**
+ * DivideNode is a node that represents an integer division.
+ * The result is rounded towards zero, and dividing by zero throws an ArithmeticException.
+ */
+public class DivideNode implements ExpressionNode {
+
+    private final ExpressionNode left;
+    private final ExpressionNode right;
+
+    public DivideNode(ExpressionNode left, ExpressionNode right) {
+        this.left = left;
+        this.right = right;
+    }
+
+    public ExpressionNode getLeft() {
+        return left;
+    }
+
+    public ExpressionNode getRight() {
+        return right;
+    }
+
+    @Override
+    public int evaluate(Robot robot) {
+        return left.evaluate(robot) / right.evaluate(robot);
+    }
+
+    @Override
+    public String toString() {
+        return "(" + left.toString() + " divided by " + right.toString() + ")";
+    }
+}
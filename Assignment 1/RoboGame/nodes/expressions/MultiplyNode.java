@@ -0,0 +1,36 @@
+package nodes.expressions;
+
+import main.Robot;
+import nodes.interfaces.ExpressionNode;
+
+/**
+ * MultiplyNode is a node that represents a multiplication
+ */
+public class MultiplyNode implements ExpressionNode {
+
+    private final ExpressionNode left;
+    private final ExpressionNode right;
+
+    public MultiplyNode(ExpressionNode left, ExpressionNode right) {
+        this.left = left;
+        this.right = right;
+    }
+
+    public ExpressionNode getLeft() {
+        return left;
+    }
+
+    public ExpressionNode getRight() {
+        return right;
+    }
+
+    @Override
+    public int evaluate(Robot robot) {
+        return left.evaluate(robot) * right.evaluate(robot);
+    }
+
+    @Override
+    public String toString() {
+        return "(" + left.toString() + " times " + right.toString() + ")";
+    }
+}
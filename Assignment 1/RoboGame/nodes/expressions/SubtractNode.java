@@ -0,0 +1,36 @@
+package nodes.expressions;
+
+import main.Robot;
+import nodes.interfaces.ExpressionNode;
+
+/**
+ * SubtractNode is a node that represents a subtraction
+ */
+public class SubtractNode implements ExpressionNode {
+
+    private final ExpressionNode left;
+    private final ExpressionNode right;
+
+    public SubtractNode(ExpressionNode left, ExpressionNode right) {
+        this.left = left;
+        this.right = right;
+    }
+
+    public ExpressionNode getLeft() {
+        return left;
+    }
+
+    public ExpressionNode getRight() {
+        return right;
+    }
+
+    @Override
+    public int evaluate(Robot robot) {
+        return left.evaluate(robot) - right.evaluate(robot);
+    }
+
+    @Override
+    public String toString() {
+        return "(" + left.toString() + " minus " + right.toString() + ")";
+    }
+}
@@ -0,0 +1,255 @@
+package nodes.interpreter;
+
+import main.Robot;
+import nodes.BlockNode;
+import nodes.LoopNode;
+import nodes.RootNode;
+import nodes.WhileNode;
+import nodes.conditionals.IfNode;
+import nodes.interfaces.ExpressionNode;
+import nodes.interfaces.ProgramNode;
+import nodes.movement.*;
+import nodes.variables.AssignmentNode;
+import util.exepeptions.RobotInterruptedException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a parsed program one action at a time, without a thread of its own.
+ * <p>
+ * {@link ProgramNode#execute} keeps its place in the program on the Java call stack, so a
+ * robot needs a thread that blocks in every action until the world commits the turn. This
+ * interpreter keeps its place in an explicit stack of frames instead: {@link #step(int)}
+ * runs the program until it performs its next action and returns, and the next call carries
+ * on from there. The robot must not block in its actions, see {@link main.SteppedMatch}.
+ * <p>
+ * Each statement started, loop iteration and counted action taken costs one instruction
+ * of the budget given to step(). A program that uses up the budget without acting, such as
+ * {@code while (eq(0, 0)) { $a = 1; }}, is stopped there for the turn and resumed from the
+ * same place on the next call, so it can never hang the caller. A program that fails, such
+ * as by dividing by zero, ends there, as it would on a robot thread: step() returns FINISHED
+ * and {@link #getError()} tells why.
+ * <p>
+ * Conditions and expressions are evaluated as a whole: they read sensors but never act.
+ * Only the nodes produced by the Parser and the ProgramOptimizer can be stepped; a compiled
+ * program, or any other node, is rejected when it is reached.
+ */
+public class StepInterpreter {
+
+    /**
+     * Returned by step() once the program has ended, or the robot was stopped.
+     */
+    public static final int FINISHED = -1;
+    /**
+     * Returned by step() when the budget ran out before the program performed an action.
+     */
+    public static final int STALLED = 0;
+
+    private static final int NONE = 0; // the statement did not act
+    private static final int BLOCK = 0, ROOT = 1, LOOP = 2, WHILE = 3, REPEAT = 4;
+
+    private final Robot robot;
+    private final List<Frame> stack = new ArrayList<>();
+    private boolean finished;
+    private RuntimeException error; // what ended the program, if it failed
+
+    /**
+     * @param program the program, as parsed or optimized
+     * @param robot   the robot to run it on
+     */
+    public StepInterpreter(ProgramNode program, Robot robot) {
+        this.robot = robot;
+        if (program instanceof RootNode root) {
+            robot.getContext().reset(root.getVariableCount());
+            stack.add(new Frame(ROOT, root.getStatements()));
+        } else {
+            stack.add(new Frame(ROOT, List.of(program)));
+        }
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return the exception the program failed with, or null if it has not failed
+     */
+    public RuntimeException getError() {
+        return error;
+    }
+
+    /**
+     * Runs the program until it performs an action, ends, or has used up the budget.
+     *
+     * @param budget the number of instructions the program may use
+     * @return the Robot.ACTION_ constant of the action performed, FINISHED or STALLED
+     */
+    public int step(int budget) {
+        if (finished) return FINISHED;
+        try {
+            for (int left = budget; left > 0; left--) {
+                if (stack.isEmpty()) break;
+                int action = next(stack.get(stack.size() - 1));
+                if (action != NONE) return action;
+            }
+            if (!stack.isEmpty()) return STALLED;
+        } catch (RobotInterruptedException e) {
+            // the robot was cancelled or stopped in the middle of an action
+        } catch (RuntimeException e) {
+            // the program failed, such as by dividing by zero
+            error = e;
+        }
+        finished = true;
+        stack.clear();
+        return FINISHED;
+    }
+
+    /**
+     * Takes one instruction of the frame on top of the stack.
+     *
+     * @return the action performed, or NONE
+     */
+    private int next(Frame frame) {
+        switch (frame.kind) {
+            case ROOT, BLOCK -> {
+                // a block stops early once the robot is dead, the top level does not, see BlockNode and RootNode
+                if (frame.index == frame.statements.size() || (frame.kind == BLOCK && frame.index > 0 && robot.isDead())) {
+                    pop();
+                    return NONE;
+                }
+                return start(frame.statements.get(frame.index++));
+            }
+            case LOOP -> {
+                if (robot.isDead()) {
+                    pop();
+                } else {
+                    push(new Frame(BLOCK, frame.body.getStatements()));
+                }
+                return NONE;
+            }
+            case WHILE -> {
+                if (frame.loop.getCondition().evaluate(robot)) {
+                    push(new Frame(BLOCK, frame.body.getStatements()));
+                } else {
+                    pop();
+                }
+                return NONE;
+            }
+            case REPEAT -> {
+                if (frame.remaining <= 0 || robot.isDead()) {
+                    pop();
+                    return NONE;
+                }
+                frame.remaining--;
+                return act(frame.action);
+            }
+            default -> throw new IllegalStateException("Unknown frame " + frame.kind);
+        }
+    }
+
+    /**
+     * Starts a statement: pushes a frame for a compound statement, or runs a simple one.
+     *
+     * @return the action performed, or NONE
+     */
+    private int start(ProgramNode node) {
+        if (node instanceof BlockNode block) {
+            push(new Frame(BLOCK, block.getStatements()));
+        } else if (node instanceof RootNode root) {
+            push(new Frame(ROOT, root.getStatements()));
+        } else if (node instanceof LoopNode loop) {
+            push(new Frame(loop.getBody()));
+        } else if (node instanceof WhileNode whileNode) {
+            push(new Frame(whileNode));
+        } else if (node instanceof IfNode ifNode) {
+            BlockNode taken = ifNode.getCondition().evaluate(robot) ? ifNode.getBlock() : ifNode.getElseBlock();
+            if (taken != null) push(new Frame(BLOCK, taken.getStatements()));
+        } else if (node instanceof AssignmentNode assignment) {
+            assignment.execute(robot);
+        } else if (node instanceof MoveNode move) {
+            return (move.getCount() == null) ? act(Robot.ACTION_MOVE) : repeat(move.getCount(), Robot.ACTION_MOVE);
+        } else if (node instanceof WaitNode wait) {
+            return (wait.getCount() == null) ? act(Robot.ACTION_WAIT) : repeat(wait.getCount(), Robot.ACTION_WAIT);
+        } else if (node instanceof TurnLNode) {
+            return act(Robot.ACTION_TURN_LEFT);
+        } else if (node instanceof TurnRNode) {
+            return act(Robot.ACTION_TURN_RIGHT);
+        } else if (node instanceof TurnAroundNode) {
+            return act(Robot.ACTION_TURN_AROUND);
+        } else if (node instanceof TakeFuelNode) {
+            return act(Robot.ACTION_TAKE_FUEL);
+        } else if (node instanceof ShieldOnNode || node instanceof ShieldOffNode) {
+            node.execute(robot); // takes effect at once, without a turn
+        } else {
+            throw new IllegalArgumentException("Cannot step through " + node.getClass().getSimpleName() + ": " + node);
+        }
+        return NONE;
+    }
+
+    /**
+     * Starts a counted move or wait, taking its first action at once if the count is positive.
+     */
+    private int repeat(ExpressionNode count, int action) {
+        Frame frame = new Frame(REPEAT, null);
+        frame.action = action;
+        frame.remaining = count.evaluate(robot);
+        push(frame);
+        return next(frame);
+    }
+
+    private int act(int action) {
+        switch (action) {
+            case Robot.ACTION_MOVE -> robot.move();
+            case Robot.ACTION_TURN_LEFT -> robot.turnLeft();
+            case Robot.ACTION_TURN_RIGHT -> robot.turnRight();
+            case Robot.ACTION_TURN_AROUND -> robot.turnAround();
+            case Robot.ACTION_TAKE_FUEL -> robot.takeFuel();
+            case Robot.ACTION_WAIT -> robot.idleWait();
+            default -> throw new IllegalArgumentException("Unknown action " + action);
+        }
+        return action;
+    }
+
+    private void push(Frame frame) {
+        stack.add(frame);
+    }
+
+    private void pop() {
+        stack.remove(stack.size() - 1);
+    }
+
+    /**
+     * Where the program is within one statement.
+     */
+    private static final class Frame {
+
+        private final int kind;
+        private final List<ProgramNode> statements; // BLOCK and ROOT
+        private final BlockNode body;               // LOOP and WHILE
+        private final WhileNode loop;               // WHILE
+        private int index;                          // next statement, BLOCK and ROOT
+        private int remaining, action;              // REPEAT
+
+        Frame(int kind, List<ProgramNode> statements) {
+            this.kind = kind;
+            this.statements = statements;
+            this.body = null;
+            this.loop = null;
+        }
+
+        Frame(BlockNode body) {
+            this.kind = LOOP;
+            this.statements = null;
+            this.body = body;
+            this.loop = null;
+        }
+
+        Frame(WhileNode loop) {
+            this.kind = WHILE;
+            this.statements = null;
+            this.body = loop.getBlock();
+            this.loop = loop;
+        }
+    }
+}
@@ -1,16 +1,47 @@
 package nodes.movement;
 
 import main.Robot;
+import nodes.interfaces.ExpressionNode;
 import nodes.interfaces.MovementNode;
 import util.exepeptions.RobotInterruptedException;
 
 /**
  * Represents a node that moves the robot forward.
+ * With an argument, the action is repeated as many times as the argument evaluates to.
  */
 public class MoveNode implements MovementNode {
 
+    private final ExpressionNode count; // Optional, null for a single move
+
+    public MoveNode() {
+        this(null);
+    }
+
+    public MoveNode(ExpressionNode count) {
+        this.count = count;
+    }
+
+    /**
+     * @return the expression for the number of steps, or null for a single move
+     */
+    public ExpressionNode getCount() {
+        return count;
+    }
+
     @Override
     public void execute(Robot robot) throws RobotInterruptedException {
-        robot.move();
+        if (count == null) {
+            robot.move();
+            return;
+        }
+        int n = count.evaluate(robot);
+        for (int i = 0; i < n && !robot.isDead(); i++) {
+            robot.move();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return (count == null) ? "move" : "move(" + count + ")";
     }
 }
@@ -1,16 +1,47 @@
 package nodes.movement;
 
 import main.Robot;
+import nodes.interfaces.ExpressionNode;
 import nodes.interfaces.MovementNode;
 import util.exepeptions.RobotInterruptedException;
 
 /**
  * Represents a node that makes the robot wait.
+ * With an argument, the action is repeated as many times as the argument evaluates to.
  */
 public class WaitNode implements MovementNode {
 
+    private final ExpressionNode count; // Optional, null for a single wait
+
+    public WaitNode() {
+        this(null);
+    }
+
+    public WaitNode(ExpressionNode count) {
+        this.count = count;
+    }
+
+    /**
+     * @return the expression for the number of turns, or null for a single wait
+     */
+    public ExpressionNode getCount() {
+        return count;
+    }
+
     @Override
     public void execute(Robot robot) throws RobotInterruptedException {
-        robot.idleWait();
+        if (count == null) {
+            robot.idleWait();
+            return;
+        }
+        int n = count.evaluate(robot);
+        for (int i = 0; i < n && !robot.isDead(); i++) {
+            robot.idleWait();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return (count == null) ? "wait" : "wait(" + count + ")";
     }
 }
@@ -0,0 +1,281 @@
+package nodes.optimizer;
+
+import nodes.BlockNode;
+import nodes.LoopNode;
+import nodes.NumberNode;
+import nodes.RootNode;
+import nodes.WhileNode;
+import nodes.conditionals.BooleanConstantNode;
+import nodes.conditionals.IfNode;
+import nodes.conditionals.logic.AndNode;
+import nodes.conditionals.logic.NotNode;
+import nodes.conditionals.logic.OrNode;
+import nodes.conditionals.relops.EqualNode;
+import nodes.conditionals.relops.GreaterThanNode;
+import nodes.conditionals.relops.LessThanNode;
+import nodes.expressions.AddNode;
+import nodes.expressions.DivideNode;
+import nodes.expressions.MultiplyNode;
+import nodes.expressions.SubtractNode;
+import nodes.interfaces.BooleanNode;
+import nodes.interfaces.ExpressionNode;
+import nodes.interfaces.ProgramNode;
+import nodes.movement.MoveNode;
+import nodes.movement.WaitNode;
+import nodes.sensors.SensorNode;
+import nodes.variables.AssignmentNode;
+import nodes.variables.VariableNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Simplifies a parsed program before it is executed.
+ * <ul>
+ *   <li>Arithmetic on constants is folded, e.g. {@code sub(mul(div(5, add(1, 4)), -1), -1)} becomes 0.
+ *   Division by a constant zero is left alone, so it still fails when it is evaluated.</li>
+ *   <li>Comparisons of constants, and comparisons of an expression with itself, become constant conditions.</li>
+ *   <li>{@code not(not(c))} becomes c, and {@code and}/{@code or} with a constant side are reduced.</li>
+ *   <li>If, elif and while statements with a constant condition keep only the arm that can run.</li>
+ * </ul>
+ * Variables are not propagated, but reading one is pure, so e.g. {@code gt($a, $a)} becomes false.
+ * A sensor read is visible to the robot, so no rule ever drops, duplicates or reorders one:
+ * a condition or expression is only removed when it contains no sensor, and short-circuit
+ * evaluation is preserved. Nodes the optimizer does not know about are kept as they are.
+ * The parsed tree is not modified; the parts that change are rebuilt.
+ */
+public class ProgramOptimizer {
+
+    private ProgramOptimizer() {
+    }
+
+    /**
+     * @param program the parsed program
+     * @return a program with the same behaviour, simplified where possible
+     */
+    public static ProgramNode optimize(ProgramNode program) {
+        if (program instanceof RootNode root) {
+            return new RootNode(statements(root.getStatements()), root.getVariableCount());
+        }
+        List<ProgramNode> result = new ArrayList<>();
+        statement(program, result);
+        return (result.size() == 1) ? result.get(0) : new RootNode(result);
+    }
+
+    //----------------------------------------------------------------//
+    //                          STATEMENTS                            //
+    //----------------------------------------------------------------//
+
+    private static List<ProgramNode> statements(List<ProgramNode> statements) {
+        List<ProgramNode> result = new ArrayList<>();
+        for (ProgramNode statement : statements) {
+            statement(statement, result);
+        }
+        return result;
+    }
+
+    private static BlockNode block(BlockNode block) {
+        List<ProgramNode> statements = statements(block.getStatements());
+        if (statements.size() == 1 && statements.get(0) instanceof BlockNode only) return only;
+        return new BlockNode(statements);
+    }
+
+    /**
+     * Adds the optimized form of the statement to the list: nothing if it can never do
+     * anything, only the block of the taken branch if its condition is constant.
+     */
+    private static void statement(ProgramNode node, List<ProgramNode> result) {
+        if (node instanceof BlockNode block) {
+            result.add(block(block));
+        } else if (node instanceof LoopNode loop) {
+            result.add(new LoopNode(block(loop.getBody())));
+        } else if (node instanceof WhileNode whileNode) {
+            BooleanNode condition = condition(whileNode.getCondition());
+            if (!isFalse(condition)) {
+                result.add(new WhileNode(condition, block(whileNode.getBlock())));
+            }
+        } else if (node instanceof IfNode ifNode) {
+            BooleanNode condition = condition(ifNode.getCondition());
+            BlockNode elseBlock = ifNode.getElseBlock();
+            if (isTrue(condition)) {
+                result.add(block(ifNode.getBlock()));
+            } else if (isFalse(condition)) {
+                if (elseBlock != null) result.add(block(elseBlock));
+            } else {
+                result.add(new IfNode(condition, block(ifNode.getBlock()), (elseBlock != null) ? block(elseBlock) : null));
+            }
+        } else if (node instanceof AssignmentNode assignment) {
+            result.add(new AssignmentNode(assignment.getVariable(), expression(assignment.getValue())));
+        } else if (node instanceof MoveNode move && move.getCount() != null) {
+            ExpressionNode count = expression(move.getCount());
+            if (!(count instanceof NumberNode number) || number.getValue() > 1) {
+                result.add(new MoveNode(count));
+            } else if (number.getValue() == 1) {
+                result.add(new MoveNode());
+            }
+        } else if (node instanceof WaitNode wait && wait.getCount() != null) {
+            ExpressionNode count = expression(wait.getCount());
+            if (!(count instanceof NumberNode number) || number.getValue() > 1) {
+                result.add(new WaitNode(count));
+            } else if (number.getValue() == 1) {
+                result.add(new WaitNode());
+            }
+        } else {
+            result.add(node);
+        }
+    }
+
+    //----------------------------------------------------------------//
+    //                          CONDITIONS                            //
+    //----------------------------------------------------------------//
+
+    private static BooleanNode condition(BooleanNode node) {
+        if (node instanceof LessThanNode lt) {
+            ExpressionNode left = expression(lt.getLeft());
+            ExpressionNode right = expression(lt.getRight());
+            if (left instanceof NumberNode l && right instanceof NumberNode r) return constant(l.getValue() < r.getValue());
+            if (isPureExpression(left) && same(left, right)) return constant(false);
+            return new LessThanNode(left, right);
+        } else if (node instanceof GreaterThanNode gt) {
+            ExpressionNode left = expression(gt.getLeft());
+            ExpressionNode right = expression(gt.getRight());
+            if (left instanceof NumberNode l && right instanceof NumberNode r) return constant(l.getValue() > r.getValue());
+            if (isPureExpression(left) && same(left, right)) return constant(false);
+            return new GreaterThanNode(left, right);
+        } else if (node instanceof EqualNode eq) {
+            ExpressionNode left = expression(eq.getLeft());
+            ExpressionNode right = expression(eq.getRight());
+            if (left instanceof NumberNode l && right instanceof NumberNode r) return constant(l.getValue() == r.getValue());
+            if (isPureExpression(left) && same(left, right)) return constant(true);
+            return new EqualNode(left, right);
+        } else if (node instanceof NotNode not) {
+            BooleanNode inner = condition(not.getCondition());
+            if (inner instanceof BooleanConstantNode c) return constant(!c.getValue());
+            if (inner instanceof NotNode twice) return twice.getCondition();
+            return new NotNode(inner);
+        } else if (node instanceof AndNode and) {
+            BooleanNode left = condition(and.getLeft());
+            if (isFalse(left)) return left;          // the right side is never evaluated
+            BooleanNode right = condition(and.getRight());
+            if (isTrue(left)) return right;
+            if (isTrue(right)) return left;
+            if (isFalse(right) && isPureCondition(left)) return right;
+            return new AndNode(left, right);
+        } else if (node instanceof OrNode or) {
+            BooleanNode left = condition(or.getLeft());
+            if (isTrue(left)) return left;           // the right side is never evaluated
+            BooleanNode right = condition(or.getRight());
+            if (isFalse(left)) return right;
+            if (isFalse(right)) return left;
+            if (isTrue(right) && isPureCondition(left)) return right;
+            return new OrNode(left, right);
+        }
+        return node;
+    }
+
+    private static BooleanNode constant(boolean value) {
+        return new BooleanConstantNode(value);
+    }
+
+    private static boolean isTrue(BooleanNode node) {
+        return node instanceof BooleanConstantNode c && c.getValue();
+    }
+
+    private static boolean isFalse(BooleanNode node) {
+        return node instanceof BooleanConstantNode c && !c.getValue();
+    }
+
+    //----------------------------------------------------------------//
+    //                          EXPRESSIONS                           //
+    //----------------------------------------------------------------//
+
+    private static ExpressionNode expression(ExpressionNode node) {
+        if (node instanceof AddNode add) {
+            ExpressionNode left = expression(add.getLeft());
+            ExpressionNode right = expression(add.getRight());
+            if (left instanceof NumberNode l && right instanceof NumberNode r) return new NumberNode(l.getValue() + r.getValue());
+            if (isZero(right)) return left;
+            if (isZero(left)) return right;
+            return new AddNode(left, right);
+        } else if (node instanceof SubtractNode sub) {
+            ExpressionNode left = expression(sub.getLeft());
+            ExpressionNode right = expression(sub.getRight());
+            if (left instanceof NumberNode l && right instanceof NumberNode r) return new NumberNode(l.getValue() - r.getValue());
+            if (isZero(right)) return left;
+            return new SubtractNode(left, right);
+        } else if (node instanceof MultiplyNode mul) {
+            ExpressionNode left = expression(mul.getLeft());
+            ExpressionNode right = expression(mul.getRight());
+            if (left instanceof NumberNode l && right instanceof NumberNode r) return new NumberNode(l.getValue() * r.getValue());
+            if (isOne(right)) return left;
+            if (isOne(left)) return right;
+            return new MultiplyNode(left, right);
+        } else if (node instanceof DivideNode div) {
+            ExpressionNode left = expression(div.getLeft());
+            ExpressionNode right = expression(div.getRight());
+            if (left instanceof NumberNode l && right instanceof NumberNode r && r.getValue() != 0) {
+                return new NumberNode(l.getValue() / r.getValue());
+            }
+            if (isOne(right)) return left;
+            return new DivideNode(left, right);
+        } else if (node instanceof SensorNode sensor && sensor.getBarrelIndex() != null) {
+            return new SensorNode(sensor.getSensorType(), expression(sensor.getBarrelIndex()));
+        }
+        return node;
+    }
+
+    private static boolean isZero(ExpressionNode node) {
+        return node instanceof NumberNode n && n.getValue() == 0;
+    }
+
+    private static boolean isOne(ExpressionNode node) {
+        return node instanceof NumberNode n && n.getValue() == 1;
+    }
+
+    //----------------------------------------------------------------//
+    //                            PURITY                              //
+    //----------------------------------------------------------------//
+
+    /**
+     * @return whether evaluating the condition reads no sensor and cannot fail,
+     * so it can be dropped or evaluated once instead of twice
+     */
+    private static boolean isPureCondition(BooleanNode node) {
+        if (node instanceof BooleanConstantNode) return true;
+        if (node instanceof LessThanNode lt) return isPureExpression(lt.getLeft()) && isPureExpression(lt.getRight());
+        if (node instanceof GreaterThanNode gt) return isPureExpression(gt.getLeft()) && isPureExpression(gt.getRight());
+        if (node instanceof EqualNode eq) return isPureExpression(eq.getLeft()) && isPureExpression(eq.getRight());
+        if (node instanceof NotNode not) return isPureCondition(not.getCondition());
+        if (node instanceof AndNode and) return isPureCondition(and.getLeft()) && isPureCondition(and.getRight());
+        if (node instanceof OrNode or) return isPureCondition(or.getLeft()) && isPureCondition(or.getRight());
+        return false;
+    }
+
+    /**
+     * @return whether evaluating the expression reads no sensor and cannot fail
+     */
+    private static boolean isPureExpression(ExpressionNode node) {
+        if (node instanceof NumberNode || node instanceof VariableNode) return true;
+        if (node instanceof AddNode add) return isPureExpression(add.getLeft()) && isPureExpression(add.getRight());
+        if (node instanceof SubtractNode sub) return isPureExpression(sub.getLeft()) && isPureExpression(sub.getRight());
+        if (node instanceof MultiplyNode mul) return isPureExpression(mul.getLeft()) && isPureExpression(mul.getRight());
+        if (node instanceof DivideNode div) {
+            return isPureExpression(div.getLeft()) && div.getRight() instanceof NumberNode n && n.getValue() != 0;
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the two expressions are built the same way, and so evaluate to the same value if pure.
+     * No expression assigns, so a variable read twice within one expression has the same value both times.
+     */
+    private static boolean same(ExpressionNode a, ExpressionNode b) {
+        if (a instanceof NumberNode x && b instanceof NumberNode y) return x.getValue() == y.getValue();
+        if (a instanceof VariableNode x && b instanceof VariableNode y) return x.getSlot() == y.getSlot();
+        if (a instanceof AddNode x && b instanceof AddNode y) return same(x.getLeft(), y.getLeft()) && same(x.getRight(), y.getRight());
+        if (a instanceof SubtractNode x && b instanceof SubtractNode y) return same(x.getLeft(), y.getLeft()) && same(x.getRight(), y.getRight());
+        if (a instanceof MultiplyNode x && b instanceof MultiplyNode y) return same(x.getLeft(), y.getLeft()) && same(x.getRight(), y.getRight());
+        if (a instanceof DivideNode x && b instanceof DivideNode y) return same(x.getLeft(), y.getLeft()) && same(x.getRight(), y.getRight());
+        return false;
+    }
+}
@@ -17,6 +17,17 @@ public class SensorNode implements ExpressionNode {
         this.barrelIndex = barrelIndex;
     }
 
+    public SensorType getSensorType() {
+        return sensorType;
+    }
+
+    /**
+     * @return the barrel index expression, or null for the closest barrel
+     */
+    public ExpressionNode getBarrelIndex() {
+        return barrelIndex;
+    }
+
     @Override
     public int evaluate(Robot robot) {
         switch (sensorType) {
@@ -48,4 +59,9 @@ public class SensorNode implements ExpressionNode {
                 throw new IllegalStateException("Unexpected sensor type: " + sensorType);
         }
     }
+
+    @Override
+    public String toString() {
+        return (barrelIndex == null) ? sensorType.toString() : sensorType + "(" + barrelIndex + ")";
+    }
 }
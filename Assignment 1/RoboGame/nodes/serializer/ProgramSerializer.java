@@ -0,0 +1,429 @@
+package nodes.serializer;
+
+import nodes.BlockNode;
+import nodes.LoopNode;
+import nodes.NumberNode;
+import nodes.RootNode;
+import nodes.WhileNode;
+import nodes.conditionals.BooleanConstantNode;
+import nodes.conditionals.IfNode;
+import nodes.conditionals.logic.AndNode;
+import nodes.conditionals.logic.NotNode;
+import nodes.conditionals.logic.OrNode;
+import nodes.conditionals.relops.EqualNode;
+import nodes.conditionals.relops.GreaterThanNode;
+import nodes.conditionals.relops.LessThanNode;
+import nodes.expressions.AddNode;
+import nodes.expressions.DivideNode;
+import nodes.expressions.MultiplyNode;
+import nodes.expressions.SubtractNode;
+import nodes.interfaces.BooleanNode;
+import nodes.interfaces.ExpressionNode;
+import nodes.interfaces.ProgramNode;
+import nodes.movement.*;
+import nodes.sensors.SensorNode;
+import nodes.sensors.SensorType;
+import nodes.variables.AssignmentNode;
+import nodes.variables.VariableNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a program tree as bytes, and reads it back without the Lexer or Parser.
+ * <p>
+ * The encoding is a 5 byte header, the int MAGIC and the byte VERSION, followed by the
+ * tree in prefix order: each node is an opcode byte, then its operands, then its children.
+ * Counts, variable slots and sensor ordinals are unsigned varints (7 bits a byte, low bits
+ * first, high bit set on all but the last byte), and numbers are zigzag varints, so small
+ * values of either sign take one byte.
+ * <pre>
+ * ROOT count variableCount statement*   BLOCK count statement*
+ * LOOP block    WHILE condition block    IF condition block    IF_ELSE condition block block
+ * MOVE    MOVE_COUNT expression    WAIT    WAIT_COUNT expression
+ * TURN_L  TURN_R  TURN_AROUND  SHIELD_ON  SHIELD_OFF  TAKE_FUEL    ASSIGN variable expression
+ * NUMBER value    SENSOR ordinal    SENSOR_INDEX ordinal expression
+ * ADD|SUB|MUL|DIV expression expression    NEW_VARIABLE slot length utf8    VARIABLE slot
+ * LT|GT|EQ expression expression    AND|OR condition condition    NOT condition    TRUE    FALSE
+ * </pre>
+ * A variable's name is written where its slot is first used, and later uses refer to the
+ * slot alone. Everything the Parser and the ProgramOptimizer produce can be written; any
+ * other node is rejected. Reading rejects nodes nested more than MAX_DEPTH deep, so that a
+ * crafted file fails with an IOException rather than overflowing the stack.
+ */
+public class ProgramSerializer {
+
+    public static final int MAGIC = 0x52475042; // "RGPB"
+    public static final int VERSION = 1;
+
+    // Statements
+    private static final int ROOT = 1, BLOCK = 2, LOOP = 3, WHILE = 4, IF = 5, IF_ELSE = 6;
+    private static final int MOVE = 7, MOVE_COUNT = 8, WAIT = 9, WAIT_COUNT = 10;
+    private static final int TURN_L = 11, TURN_R = 12, TURN_AROUND = 13, SHIELD_ON = 14, SHIELD_OFF = 15, TAKE_FUEL = 16;
+    private static final int ASSIGN = 17;
+    // Expressions
+    private static final int NUMBER = 32, SENSOR = 33, SENSOR_INDEX = 34;
+    private static final int ADD = 35, SUB = 36, MUL = 37, DIV = 38;
+    private static final int NEW_VARIABLE = 39, VARIABLE = 40;
+    // Conditions
+    private static final int LT = 48, GT = 49, EQ = 50, AND = 51, OR = 52, NOT = 53, TRUE = 54, FALSE = 55;
+
+    private static final SensorType[] SENSORS = SensorType.values();
+    // Nodes nested deeper than this are rejected as corrupt rather than read by recursion
+    private static final int MAX_DEPTH = 1000;
+
+    private ProgramSerializer() {
+    }
+
+    //----------------------------------------------------------------//
+    //                            WRITING                             //
+    //----------------------------------------------------------------//
+
+    /**
+     * @return the program as bytes
+     * @throws IllegalArgumentException if the program holds a node that cannot be written
+     */
+    public static byte[] serialize(ProgramNode program) {
+        Writer out = new Writer();
+        out.write(MAGIC >>> 24);
+        out.write(MAGIC >>> 16);
+        out.write(MAGIC >>> 8);
+        out.write(MAGIC);
+        out.write(VERSION);
+        out.statement(program);
+        return out.toByteArray();
+    }
+
+    public static void write(ProgramNode program, Path file) throws IOException {
+        Files.write(file, serialize(program));
+    }
+
+    private static final class Writer extends ByteArrayOutputStream {
+
+        private final Map<Integer, String> variables = new HashMap<>(); // slots written so far
+
+        void statement(ProgramNode node) {
+            if (node instanceof RootNode root) {
+                write(ROOT);
+                varint(root.getStatements().size());
+                varint(root.getVariableCount());
+                for (ProgramNode statement : root.getStatements()) statement(statement);
+            } else if (node instanceof BlockNode block) {
+                block(block);
+            } else if (node instanceof LoopNode loop) {
+                write(LOOP);
+                block(loop.getBody());
+            } else if (node instanceof WhileNode whileNode) {
+                write(WHILE);
+                condition(whileNode.getCondition());
+                block(whileNode.getBlock());
+            } else if (node instanceof IfNode ifNode) {
+                write((ifNode.getElseBlock() == null) ? IF : IF_ELSE);
+                condition(ifNode.getCondition());
+                block(ifNode.getBlock());
+                if (ifNode.getElseBlock() != null) block(ifNode.getElseBlock());
+            } else if (node instanceof MoveNode move) {
+                counted(MOVE, MOVE_COUNT, move.getCount());
+            } else if (node instanceof WaitNode wait) {
+                counted(WAIT, WAIT_COUNT, wait.getCount());
+            } else if (node instanceof TurnLNode) {
+                write(TURN_L);
+            } else if (node instanceof TurnRNode) {
+                write(TURN_R);
+            } else if (node instanceof TurnAroundNode) {
+                write(TURN_AROUND);
+            } else if (node instanceof ShieldOnNode) {
+                write(SHIELD_ON);
+            } else if (node instanceof ShieldOffNode) {
+                write(SHIELD_OFF);
+            } else if (node instanceof TakeFuelNode) {
+                write(TAKE_FUEL);
+            } else if (node instanceof AssignmentNode assignment) {
+                write(ASSIGN);
+                variable(assignment.getVariable());
+                expression(assignment.getValue());
+            } else {
+                throw unknown(node);
+            }
+        }
+
+        private void block(BlockNode block) {
+            write(BLOCK);
+            varint(block.getStatements().size());
+            for (ProgramNode statement : block.getStatements()) statement(statement);
+        }
+
+        private void counted(int plain, int counted, ExpressionNode count) {
+            if (count == null) {
+                write(plain);
+            } else {
+                write(counted);
+                expression(count);
+            }
+        }
+
+        private void condition(BooleanNode node) {
+            if (node instanceof LessThanNode lt) {
+                binary(LT, lt.getLeft(), lt.getRight());
+            } else if (node instanceof GreaterThanNode gt) {
+                binary(GT, gt.getLeft(), gt.getRight());
+            } else if (node instanceof EqualNode eq) {
+                binary(EQ, eq.getLeft(), eq.getRight());
+            } else if (node instanceof AndNode and) {
+                write(AND);
+                condition(and.getLeft());
+                condition(and.getRight());
+            } else if (node instanceof OrNode or) {
+                write(OR);
+                condition(or.getLeft());
+                condition(or.getRight());
+            } else if (node instanceof NotNode not) {
+                write(NOT);
+                condition(not.getCondition());
+            } else if (node instanceof BooleanConstantNode constant) {
+                write(constant.getValue() ? TRUE : FALSE);
+            } else {
+                throw unknown(node);
+            }
+        }
+
+        private void expression(ExpressionNode node) {
+            if (node instanceof NumberNode number) {
+                write(NUMBER);
+                int value = number.getValue();
+                varint((value << 1) ^ (value >> 31)); // zigzag
+            } else if (node instanceof SensorNode sensor) {
+                write((sensor.getBarrelIndex() == null) ? SENSOR : SENSOR_INDEX);
+                varint(sensor.getSensorType().ordinal());
+                if (sensor.getBarrelIndex() != null) expression(sensor.getBarrelIndex());
+            } else if (node instanceof VariableNode variable) {
+                variable(variable);
+            } else if (node instanceof AddNode add) {
+                binary(ADD, add.getLeft(), add.getRight());
+            } else if (node instanceof SubtractNode sub) {
+                binary(SUB, sub.getLeft(), sub.getRight());
+            } else if (node instanceof MultiplyNode mul) {
+                binary(MUL, mul.getLeft(), mul.getRight());
+            } else if (node instanceof DivideNode div) {
+                binary(DIV, div.getLeft(), div.getRight());
+            } else {
+                throw unknown(node);
+            }
+        }
+
+        private void binary(int opcode, ExpressionNode left, ExpressionNode right) {
+            write(opcode);
+            expression(left);
+            expression(right);
+        }
+
+        private void variable(VariableNode variable) {
+            String known = variables.putIfAbsent(variable.getSlot(), variable.getName());
+            if (known == null) {
+                write(NEW_VARIABLE);
+                varint(variable.getSlot());
+                byte[] name = variable.getName().getBytes(StandardCharsets.UTF_8);
+                varint(name.length);
+                write(name, 0, name.length);
+            } else if (known.equals(variable.getName())) {
+                write(VARIABLE);
+                varint(variable.getSlot());
+            } else {
+                throw new IllegalArgumentException("Variables " + known + " and " + variable.getName() + " share slot " + variable.getSlot());
+            }
+        }
+
+        /**
+         * Writes an unsigned varint; negative values take five bytes.
+         */
+        private void varint(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        private static IllegalArgumentException unknown(Object node) {
+            return new IllegalArgumentException("Cannot serialize " + node.getClass().getSimpleName() + ": " + node);
+        }
+    }
+
+    //----------------------------------------------------------------//
+    //                            READING                             //
+    //----------------------------------------------------------------//
+
+    /**
+     * @return the program the bytes were written from
+     * @throws IOException if the bytes are not a serialized program of this version
+     */
+    public static ProgramNode deserialize(byte[] data) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        try {
+            if (data.length < 5 || in.getInt() != MAGIC) throw new IOException("Not a serialized program");
+            int version = in.get();
+            if (version != VERSION) throw new IOException("Unsupported serialized program version " + version);
+            ProgramNode program = new Reader(in).statement();
+            if (in.hasRemaining()) throw new IOException("Corrupt serialized program: " + in.remaining() + " bytes after the end");
+            return program;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Corrupt serialized program: ends early");
+        }
+    }
+
+    public static ProgramNode read(Path file) throws IOException {
+        return deserialize(Files.readAllBytes(file));
+    }
+
+    private static final class Reader {
+
+        private final ByteBuffer in;
+        private final Map<Integer, VariableNode> variables = new HashMap<>();
+        private int depth; // nodes being read, one inside the other
+
+        Reader(ByteBuffer in) {
+            this.in = in;
+        }
+
+        ProgramNode statement() throws IOException {
+            enter();
+            int opcode = in.get();
+            ProgramNode node = switch (opcode) {
+                case ROOT -> {
+                    int count = count();
+                    int variableCount = count();
+                    yield new RootNode(statements(count), variableCount);
+                }
+                case BLOCK -> new BlockNode(statements(count()));
+                case LOOP -> new LoopNode(block());
+                case WHILE -> new WhileNode(condition(), block());
+                case IF -> new IfNode(condition(), block());
+                case IF_ELSE -> new IfNode(condition(), block(), block());
+                case MOVE -> new MoveNode();
+                case MOVE_COUNT -> new MoveNode(expression());
+                case WAIT -> new WaitNode();
+                case WAIT_COUNT -> new WaitNode(expression());
+                case TURN_L -> new TurnLNode();
+                case TURN_R -> new TurnRNode();
+                case TURN_AROUND -> new TurnAroundNode();
+                case SHIELD_ON -> new ShieldOnNode();
+                case SHIELD_OFF -> new ShieldOffNode();
+                case TAKE_FUEL -> new TakeFuelNode();
+                case ASSIGN -> new AssignmentNode(variable(in.get()), expression());
+                default -> throw corrupt("statement", opcode);
+            };
+            depth--;
+            return node;
+        }
+
+        private List<ProgramNode> statements(int count) throws IOException {
+            List<ProgramNode> statements = new ArrayList<>(Math.min(count, in.remaining()));
+            for (int i = 0; i < count; i++) statements.add(statement());
+            return statements;
+        }
+
+        private BlockNode block() throws IOException {
+            int opcode = in.get();
+            if (opcode != BLOCK) throw corrupt("block", opcode);
+            return new BlockNode(statements(count()));
+        }
+
+        private BooleanNode condition() throws IOException {
+            enter();
+            int opcode = in.get();
+            BooleanNode node = switch (opcode) {
+                case LT -> new LessThanNode(expression(), expression());
+                case GT -> new GreaterThanNode(expression(), expression());
+                case EQ -> new EqualNode(expression(), expression());
+                case AND -> new AndNode(condition(), condition());
+                case OR -> new OrNode(condition(), condition());
+                case NOT -> new NotNode(condition());
+                case TRUE -> new BooleanConstantNode(true);
+                case FALSE -> new BooleanConstantNode(false);
+                default -> throw corrupt("condition", opcode);
+            };
+            depth--;
+            return node;
+        }
+
+        private ExpressionNode expression() throws IOException {
+            enter();
+            int opcode = in.get();
+            ExpressionNode node = switch (opcode) {
+                case NUMBER -> {
+                    int zigzag = varint();
+                    yield new NumberNode((zigzag >>> 1) ^ -(zigzag & 1));
+                }
+                case SENSOR -> new SensorNode(sensor());
+                case SENSOR_INDEX -> new SensorNode(sensor(), expression());
+                case ADD -> new AddNode(expression(), expression());
+                case SUB -> new SubtractNode(expression(), expression());
+                case MUL -> new MultiplyNode(expression(), expression());
+                case DIV -> new DivideNode(expression(), expression());
+                case NEW_VARIABLE, VARIABLE -> variable(opcode);
+                default -> throw corrupt("expression", opcode);
+            };
+            depth--;
+            return node;
+        }
+
+        private VariableNode variable(int opcode) throws IOException {
+            if (opcode != VARIABLE && opcode != NEW_VARIABLE) throw corrupt("variable", opcode);
+            int slot = count();
+            if (opcode == VARIABLE) {
+                VariableNode variable = variables.get(slot);
+                if (variable == null) throw new IOException("Corrupt serialized program: variable slot " + slot + " used before it is named");
+                return variable;
+            }
+            int length = count();
+            if (length > in.remaining()) throw new BufferUnderflowException();
+            byte[] name = new byte[length];
+            in.get(name);
+            VariableNode variable = new VariableNode(new String(name, StandardCharsets.UTF_8), slot);
+            if (variables.putIfAbsent(slot, variable) != null) throw new IOException("Corrupt serialized program: variable slot " + slot + " named twice");
+            return variable;
+        }
+
+        private SensorType sensor() throws IOException {
+            int ordinal = count();
+            if (ordinal >= SENSORS.length) throw new IOException("Corrupt serialized program: unknown sensor " + ordinal);
+            return SENSORS[ordinal];
+        }
+
+        private void enter() throws IOException {
+            if (++depth > MAX_DEPTH) throw new IOException("Corrupt serialized program: nested more than " + MAX_DEPTH + " deep");
+        }
+
+        /**
+         * @return a varint that must not be negative
+         */
+        private int count() throws IOException {
+            int value = varint();
+            if (value < 0) throw new IOException("Corrupt serialized program: negative count " + value);
+            return value;
+        }
+
+        private int varint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = in.get();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Corrupt serialized program: varint too long");
+        }
+
+        private static IOException corrupt(String expected, int opcode) {
+            return new IOException("Corrupt serialized program: opcode " + (opcode & 0xFF) + " where a " + expected + " was expected");
+        }
+    }
+}
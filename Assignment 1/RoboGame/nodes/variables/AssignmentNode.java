@@ -0,0 +1,37 @@
+package nodes.variables;
+
+import main.Robot;
+import nodes.interfaces.ExpressionNode;
+import nodes.interfaces.ProgramNode;
+
+/**
+ * Represents an assignment of the value of an expression to a variable.
+ */
+public class AssignmentNode implements ProgramNode {
+
+    private final VariableNode variable;
+    private final ExpressionNode value;
+
+    public AssignmentNode(VariableNode variable, ExpressionNode value) {
+        this.variable = variable;
+        this.value = value;
+    }
+
+    public VariableNode getVariable() {
+        return variable;
+    }
+
+    public ExpressionNode getValue() {
+        return value;
+    }
+
+    @Override
+    public void execute(Robot robot) {
+        robot.getContext().set(variable.getSlot(), value.evaluate(robot));
+    }
+
+    @Override
+    public String toString() {
+        return variable + " = " + value;
+    }
+}
@@ -0,0 +1,40 @@
+package nodes.variables;
+
+import main.Robot;
+import nodes.interfaces.ExpressionNode;
+
+/**
+ * VariableNode is a node that represents reading a variable.
+ * The name is resolved to a slot of the robot's ExecutionContext when the program is parsed.
+ */
+public class VariableNode implements ExpressionNode {
+
+    private final String name;
+    private final int slot;
+
+    public VariableNode(String name, int slot) {
+        this.name = name;
+        this.slot = slot;
+    }
+
+    /**
+     * @return the name of the variable, including the $
+     */
+    public String getName() {
+        return name;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    @Override
+    public int evaluate(Robot robot) {
+        return robot.getContext().get(slot);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,517 @@
+package nodes.vm;
+
+import main.Robot;
+import nodes.BlockNode;
+import nodes.LoopNode;
+import nodes.NumberNode;
+import nodes.RootNode;
+import nodes.WhileNode;
+import nodes.conditionals.BooleanConstantNode;
+import nodes.conditionals.IfNode;
+import nodes.conditionals.logic.AndNode;
+import nodes.conditionals.logic.NotNode;
+import nodes.conditionals.logic.OrNode;
+import nodes.conditionals.relops.EqualNode;
+import nodes.conditionals.relops.GreaterThanNode;
+import nodes.conditionals.relops.LessThanNode;
+import nodes.expressions.AddNode;
+import nodes.expressions.DivideNode;
+import nodes.expressions.MultiplyNode;
+import nodes.expressions.SubtractNode;
+import nodes.interfaces.BooleanNode;
+import nodes.interfaces.ExpressionNode;
+import nodes.interfaces.ProgramNode;
+import nodes.interpreter.StepInterpreter;
+import nodes.movement.*;
+import nodes.sensors.SensorNode;
+import nodes.sensors.SensorType;
+import nodes.variables.AssignmentNode;
+import nodes.variables.VariableNode;
+
+import java.util.Arrays;
+
+/**
+ * Optional execution backend that lowers a parsed program into a flat array of int
+ * instructions, run by a single switch loop.
+ * <p>
+ * Each instruction is an opcode followed by at most one int operand:
+ * <pre>
+ * PUSH value    LOAD slot    STORE slot    SENSE sensor    SENSE_AT sensor
+ * ADD  SUB  MUL  DIV    LT  GT  EQ  NOT    JMP target    JZ target    JNZ target    JDEAD target
+ * ACT action    REPEAT action    SHIELD on    RESET slots    HALT
+ * </pre>
+ * Conditions leave 1 or 0 on the stack, and and/or jump over their right side as the
+ * tree does. A block jumps to its end with JDEAD after each statement once the robot is
+ * dead; a loop checks the same before each pass, and tells the robot of the pass with the
+ * JMP back to its top. A counted move or wait pushes its count, and REPEAT then acts and
+ * counts down, staying at the same pc until the count is used up.
+ * <p>
+ * All the state of a run is in a {@link VmState}: the program counter, and a stack holding
+ * the variables below the operands, so unlike {@link ProgramNode#execute} a run can be
+ * stopped after any action, copied, and resumed from either copy. {@link #run} is the
+ * stepping counterpart of {@link StepInterpreter#step}, and returns the same values, but
+ * its budget counts instructions rather than statements.
+ * <p>
+ * Only the nodes produced by the Parser and the ProgramOptimizer can be lowered; any
+ * other node is rejected.
+ */
+public final class BytecodeProgram implements ProgramNode {
+
+    public static final int FINISHED = StepInterpreter.FINISHED;
+    public static final int STALLED = StepInterpreter.STALLED;
+
+    static final int HALT = 0, PUSH = 1, LOAD = 2, STORE = 3, SENSE = 4, SENSE_AT = 5;
+    static final int ADD = 6, SUB = 7, MUL = 8, DIV = 9, LT = 10, GT = 11, EQ = 12, NOT = 13;
+    static final int JMP = 14, JZ = 15, JNZ = 16, JDEAD = 17;
+    static final int ACT = 18, REPEAT = 19, SHIELD = 20, RESET = 21;
+
+    private static final String[] NAMES = {
+            "HALT", "PUSH", "LOAD", "STORE", "SENSE", "SENSE_AT", "ADD", "SUB", "MUL", "DIV", "LT", "GT", "EQ", "NOT",
+            "JMP", "JZ", "JNZ", "JDEAD", "ACT", "REPEAT", "SHIELD", "RESET"};
+    private static final int[] OPERANDS = {0, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 1, 1, 1, 1};
+
+    private static final SensorType[] SENSORS = SensorType.values();
+    private static final int FUEL_LEFT = SensorType.FUEL_LEFT.ordinal(), OPP_LR = SensorType.OPP_LR.ordinal(),
+            OPP_FB = SensorType.OPP_FB.ordinal(), NUM_BARRELS = SensorType.NUM_BARRELS.ordinal(),
+            BARREL_LR = SensorType.BARREL_LR.ordinal(), BARREL_FB = SensorType.BARREL_FB.ordinal(),
+            WALL_DIST = SensorType.WALL_DIST.ordinal();
+
+    private final int[] code;
+    private final int variables; // slots at the bottom of the stack
+    private final int stackSize;
+    private final ProgramNode source;
+
+    private BytecodeProgram(int[] code, int variables, int stackSize, ProgramNode source) {
+        this.code = code;
+        this.variables = variables;
+        this.stackSize = stackSize;
+        this.source = source;
+    }
+
+    /**
+     * Lowers the given program into instructions.
+     *
+     * @param program the program, as parsed or optimized
+     * @return a program with the same behaviour and string form as the original
+     * @throws IllegalArgumentException if the program holds a node that cannot be lowered
+     */
+    public static BytecodeProgram lower(ProgramNode program) {
+        Lowering lowering = new Lowering();
+        lowering.statement(program);
+        lowering.emit(HALT);
+        int variables = lowering.slots;
+        return new BytecodeProgram(Arrays.copyOf(lowering.code, lowering.size), variables, variables + lowering.maxDepth, program);
+    }
+
+    /**
+     * @return a state at the start of the program, with every variable 0
+     */
+    public VmState start() {
+        return new VmState(0, variables, new int[stackSize]);
+    }
+
+    /**
+     * @return whether a run in the state has ended
+     */
+    public boolean isFinished(VmState state) {
+        return code[state.pc] == HALT;
+    }
+
+    @Override
+    public void execute(Robot robot) {
+        VmState state = start();
+        while (interpret(state, robot, Integer.MAX_VALUE) != FINISHED) {
+            // each action blocks in the robot until the world commits it
+        }
+    }
+
+    /**
+     * Runs the program from the state until it performs an action, ends, or has used up the
+     * budget, leaving the state where it stopped. A program that fails, such as by dividing
+     * by zero, ends there, as in {@link StepInterpreter#step}.
+     *
+     * @param budget the number of instructions the program may run
+     * @return the Robot.ACTION_ constant of the action performed, FINISHED or STALLED
+     */
+    public int run(VmState state, Robot robot, int budget) {
+        try {
+            return interpret(state, robot, budget);
+        } catch (RuntimeException e) {
+            // the robot was cancelled or stopped in the middle of an action, or the program failed
+            state.pc = code.length - 1;
+            state.sp = variables;
+            return FINISHED;
+        }
+    }
+
+    private int interpret(VmState state, Robot robot, int budget) {
+        final int[] code = this.code;
+        final int[] stack = state.stack;
+        int pc = state.pc;
+        int sp = state.sp;
+        while (budget-- > 0) {
+            switch (code[pc]) {
+                case PUSH -> {
+                    stack[sp++] = code[pc + 1];
+                    pc += 2;
+                }
+                case LOAD -> {
+                    stack[sp++] = stack[code[pc + 1]];
+                    pc += 2;
+                }
+                case STORE -> {
+                    stack[code[pc + 1]] = stack[--sp];
+                    pc += 2;
+                }
+                case SENSE -> {
+                    stack[sp++] = sense(robot, code[pc + 1]);
+                    pc += 2;
+                }
+                case SENSE_AT -> {
+                    stack[sp - 1] = (code[pc + 1] == BARREL_LR) ? robot.getBarrelLR(stack[sp - 1]) : robot.getBarrelFB(stack[sp - 1]);
+                    pc += 2;
+                }
+                case ADD -> {
+                    sp--;
+                    stack[sp - 1] += stack[sp];
+                    pc++;
+                }
+                case SUB -> {
+                    sp--;
+                    stack[sp - 1] -= stack[sp];
+                    pc++;
+                }
+                case MUL -> {
+                    sp--;
+                    stack[sp - 1] *= stack[sp];
+                    pc++;
+                }
+                case DIV -> {
+                    sp--;
+                    stack[sp - 1] /= stack[sp];
+                    pc++;
+                }
+                case LT -> {
+                    sp--;
+                    stack[sp - 1] = (stack[sp - 1] < stack[sp]) ? 1 : 0;
+                    pc++;
+                }
+                case GT -> {
+                    sp--;
+                    stack[sp - 1] = (stack[sp - 1] > stack[sp]) ? 1 : 0;
+                    pc++;
+                }
+                case EQ -> {
+                    sp--;
+                    stack[sp - 1] = (stack[sp - 1] == stack[sp]) ? 1 : 0;
+                    pc++;
+                }
+                case NOT -> {
+                    stack[sp - 1] ^= 1;
+                    pc++;
+                }
+                case JMP -> {
+                    if (code[pc + 1] < pc) robot.onLoopPass(); // the end of a loop
+                    pc = code[pc + 1];
+                }
+                case JZ -> pc = (stack[--sp] == 0) ? code[pc + 1] : pc + 2;
+                case JNZ -> pc = (stack[--sp] != 0) ? code[pc + 1] : pc + 2;
+                case JDEAD -> pc = robot.isDead() ? code[pc + 1] : pc + 2;
+                case ACT -> {
+                    int action = code[pc + 1];
+                    state.pc = pc + 2;
+                    state.sp = sp;
+                    act(robot, action);
+                    return action;
+                }
+                case REPEAT -> {
+                    if (stack[sp - 1] <= 0 || robot.isDead()) {
+                        sp--;
+                        pc += 2;
+                    } else {
+                        stack[sp - 1]--;
+                        int action = code[pc + 1];
+                        state.pc = pc; // back here for the next one
+                        state.sp = sp;
+                        act(robot, action);
+                        return action;
+                    }
+                }
+                case SHIELD -> {
+                    robot.setShield(code[pc + 1] != 0); // takes effect at once, without a turn
+                    pc += 2;
+                }
+                case RESET -> {
+                    Arrays.fill(stack, 0, code[pc + 1], 0);
+                    pc += 2;
+                }
+                case HALT -> {
+                    state.pc = pc;
+                    state.sp = sp;
+                    return FINISHED;
+                }
+                default -> throw new IllegalStateException("Unknown opcode " + code[pc] + " at " + pc);
+            }
+        }
+        state.pc = pc;
+        state.sp = sp;
+        return STALLED;
+    }
+
+    private static int sense(Robot robot, int sensor) {
+        if (sensor == FUEL_LEFT) return robot.getFuel();
+        if (sensor == OPP_LR) return robot.getOpponentLR();
+        if (sensor == OPP_FB) return robot.getOpponentFB();
+        if (sensor == NUM_BARRELS) return robot.numBarrels();
+        if (sensor == BARREL_LR) return robot.getClosestBarrelLR();
+        if (sensor == BARREL_FB) return robot.getClosestBarrelFB();
+        if (sensor == WALL_DIST) return robot.getDistanceToWall();
+        throw new IllegalStateException("Unexpected sensor: " + sensor);
+    }
+
+    private static void act(Robot robot, int action) {
+        switch (action) {
+            case Robot.ACTION_MOVE -> robot.move();
+            case Robot.ACTION_TURN_LEFT -> robot.turnLeft();
+            case Robot.ACTION_TURN_RIGHT -> robot.turnRight();
+            case Robot.ACTION_TURN_AROUND -> robot.turnAround();
+            case Robot.ACTION_TAKE_FUEL -> robot.takeFuel();
+            case Robot.ACTION_WAIT -> robot.idleWait();
+            default -> throw new IllegalArgumentException("Unknown action " + action);
+        }
+    }
+
+    /**
+     * @return the instructions, one per line with its offset
+     */
+    public String disassemble() {
+        StringBuilder out = new StringBuilder();
+        for (int pc = 0; pc < code.length; pc += 1 + OPERANDS[code[pc]]) {
+            out.append(String.format("%5d  %s", pc, NAMES[code[pc]]));
+            if (OPERANDS[code[pc]] > 0) {
+                int operand = code[pc + 1];
+                out.append(' ').append((code[pc] == SENSE || code[pc] == SENSE_AT) ? SENSORS[operand].toString() : String.valueOf(operand));
+            }
+            out.append('\n');
+        }
+        return out.toString();
+    }
+
+    @Override
+    public String toString() {
+        return source.toString();
+    }
+
+    //----------------------------------------------------------------//
+    //                            LOWERING                            //
+    //----------------------------------------------------------------//
+
+    private static final class Lowering {
+
+        private int[] code = new int[64];
+        private int size;
+        private int depth, maxDepth; // operands on the stack at the current instruction
+        private int slots;           // variable slots used
+
+        void statement(ProgramNode node) {
+            if (node instanceof RootNode root) {
+                emit(RESET, slot(root.getVariableCount() - 1) + 1);
+                for (ProgramNode statement : root.getStatements()) statement(statement); // the top level goes on once dead
+            } else if (node instanceof BlockNode block) {
+                block(block);
+            } else if (node instanceof LoopNode loop) {
+                int top = size;
+                int exit = jump(JDEAD);
+                block(loop.getBody());
+                emit(JMP, top);
+                patch(exit);
+            } else if (node instanceof WhileNode whileNode) {
+                int top = size;
+                condition(whileNode.getCondition());
+                int exit = jump(JZ);
+                block(whileNode.getBlock());
+                emit(JMP, top);
+                patch(exit);
+            } else if (node instanceof IfNode ifNode) {
+                condition(ifNode.getCondition());
+                int otherwise = jump(JZ);
+                block(ifNode.getBlock());
+                if (ifNode.getElseBlock() == null) {
+                    patch(otherwise);
+                } else {
+                    int end = jump(JMP);
+                    patch(otherwise);
+                    block(ifNode.getElseBlock());
+                    patch(end);
+                }
+            } else if (node instanceof MoveNode move) {
+                counted(Robot.ACTION_MOVE, move.getCount());
+            } else if (node instanceof WaitNode wait) {
+                counted(Robot.ACTION_WAIT, wait.getCount());
+            } else if (node instanceof TurnLNode) {
+                emit(ACT, Robot.ACTION_TURN_LEFT);
+            } else if (node instanceof TurnRNode) {
+                emit(ACT, Robot.ACTION_TURN_RIGHT);
+            } else if (node instanceof TurnAroundNode) {
+                emit(ACT, Robot.ACTION_TURN_AROUND);
+            } else if (node instanceof TakeFuelNode) {
+                emit(ACT, Robot.ACTION_TAKE_FUEL);
+            } else if (node instanceof ShieldOnNode) {
+                emit(SHIELD, 1);
+            } else if (node instanceof ShieldOffNode) {
+                emit(SHIELD, 0);
+            } else if (node instanceof AssignmentNode assignment) {
+                expression(assignment.getValue());
+                emit(STORE, slot(assignment.getVariable().getSlot()));
+            } else {
+                throw unknown(node);
+            }
+        }
+
+        /**
+         * A block stops after any statement that leaves the robot dead, see BlockNode.
+         */
+        private void block(BlockNode block) {
+            int statements = block.getStatements().size();
+            int[] exits = new int[Math.max(0, statements - 1)];
+            for (int i = 0; i < statements; i++) {
+                statement(block.getStatements().get(i));
+                if (i < statements - 1) exits[i] = jump(JDEAD);
+            }
+            for (int exit : exits) patch(exit);
+        }
+
+        private void counted(int action, ExpressionNode count) {
+            if (count == null) {
+                emit(ACT, action);
+            } else {
+                expression(count);
+                emit(REPEAT, action);
+            }
+        }
+
+        private void condition(BooleanNode node) {
+            if (node instanceof LessThanNode lt) {
+                binary(LT, lt.getLeft(), lt.getRight());
+            } else if (node instanceof GreaterThanNode gt) {
+                binary(GT, gt.getLeft(), gt.getRight());
+            } else if (node instanceof EqualNode eq) {
+                binary(EQ, eq.getLeft(), eq.getRight());
+            } else if (node instanceof AndNode and) {
+                shortCircuit(JZ, and.getLeft(), and.getRight(), 0);
+            } else if (node instanceof OrNode or) {
+                shortCircuit(JNZ, or.getLeft(), or.getRight(), 1);
+            } else if (node instanceof NotNode not) {
+                condition(not.getCondition());
+                emit(NOT);
+            } else if (node instanceof BooleanConstantNode constant) {
+                emit(PUSH, constant.getValue() ? 1 : 0);
+            } else {
+                throw unknown(node);
+            }
+        }
+
+        /**
+         * Evaluates the right side only if the left does not decide the result already.
+         *
+         * @param decided the result when the left side decides it
+         */
+        private void shortCircuit(int jump, BooleanNode left, BooleanNode right, int decided) {
+            condition(left);
+            int shortcut = jump(jump);
+            condition(right);
+            int end = jump(JMP);
+            patch(shortcut);
+            depth--; // the right side was not pushed on this path
+            emit(PUSH, decided);
+            patch(end);
+        }
+
+        private void expression(ExpressionNode node) {
+            if (node instanceof NumberNode number) {
+                emit(PUSH, number.getValue());
+            } else if (node instanceof SensorNode sensor) {
+                SensorType type = sensor.getSensorType();
+                if (sensor.getBarrelIndex() == null || (type != SensorType.BARREL_LR && type != SensorType.BARREL_FB)) {
+                    emit(SENSE, type.ordinal()); // other sensors ignore an index, see SensorNode
+                } else {
+                    expression(sensor.getBarrelIndex());
+                    emit(SENSE_AT, type.ordinal());
+                }
+            } else if (node instanceof VariableNode variable) {
+                emit(LOAD, slot(variable.getSlot()));
+            } else if (node instanceof AddNode add) {
+                binary(ADD, add.getLeft(), add.getRight());
+            } else if (node instanceof SubtractNode sub) {
+                binary(SUB, sub.getLeft(), sub.getRight());
+            } else if (node instanceof MultiplyNode mul) {
+                binary(MUL, mul.getLeft(), mul.getRight());
+            } else if (node instanceof DivideNode div) {
+                binary(DIV, div.getLeft(), div.getRight());
+            } else {
+                throw unknown(node);
+            }
+        }
+
+        private void binary(int opcode, ExpressionNode left, ExpressionNode right) {
+            expression(left);
+            expression(right);
+            emit(opcode);
+        }
+
+        private int slot(int slot) {
+            slots = Math.max(slots, slot + 1);
+            return slot;
+        }
+
+        /**
+         * Emits a jump whose target is patched later.
+         *
+         * @return the offset of the target, to pass to {@link #patch}
+         */
+        private int jump(int opcode) {
+            emit(opcode, -1);
+            return size - 1;
+        }
+
+        /**
+         * Points the jump at the next instruction emitted.
+         */
+        private void patch(int target) {
+            code[target] = size;
+        }
+
+        void emit(int opcode) {
+            append(opcode);
+            adjust(opcode);
+        }
+
+        private void emit(int opcode, int operand) {
+            append(opcode);
+            append(operand);
+            adjust(opcode);
+        }
+
+        private void append(int value) {
+            if (size == code.length) code = Arrays.copyOf(code, 2 * size);
+            code[size++] = value;
+        }
+
+        /**
+         * Tracks the operands on the stack after the instruction.
+         */
+        private void adjust(int opcode) {
+            switch (opcode) {
+                case PUSH, LOAD, SENSE -> depth++;
+                case STORE, ADD, SUB, MUL, DIV, LT, GT, EQ, JZ, JNZ, REPEAT -> depth--;
+                default -> {
+                }
+            }
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        private static IllegalArgumentException unknown(Object node) {
+            return new IllegalArgumentException("Cannot lower " + node.getClass().getSimpleName() + ": " + node);
+        }
+    }
+}
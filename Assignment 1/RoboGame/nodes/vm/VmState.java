@@ -0,0 +1,76 @@
+package nodes.vm;
+
+import java.util.Arrays;
+
+/**
+ * Where a {@link BytecodeProgram} is in its run: the program counter and one int stack.
+ * <p>
+ * The bottom of the stack holds the program's variables, one slot each, and the operands
+ * of the instruction being evaluated and the counts of moves and waits in progress go on
+ * top of them. Nothing else is kept anywhere, not on the Java call stack and not in the
+ * robot, so copying a state and running the copy continues the program from the same
+ * place while the original stays where it was, as a search over possible futures needs.
+ * The stack is sized for the program when it is lowered and never grows.
+ */
+public final class VmState {
+
+    int pc;
+    int sp;
+    final int[] stack;
+
+    VmState(int pc, int sp, int[] stack) {
+        this.pc = pc;
+        this.sp = sp;
+        this.stack = stack;
+    }
+
+    /**
+     * @return an independent state at the same place with the same values
+     */
+    public VmState copy() {
+        return new VmState(pc, sp, stack.clone());
+    }
+
+    /**
+     * Makes this state the same as the other, without allocating.
+     *
+     * @throws IllegalArgumentException if the other is a state of a program with a different stack size
+     */
+    public void copyFrom(VmState other) {
+        if (other.stack.length != stack.length) {
+            throw new IllegalArgumentException("Stack of " + other.stack.length + " copied into stack of " + stack.length);
+        }
+        pc = other.pc;
+        sp = other.sp;
+        System.arraycopy(other.stack, 0, stack, 0, sp);
+    }
+
+    public int getPc() {
+        return pc;
+    }
+
+    /**
+     * @return the value of the variable in the slot
+     */
+    public int getVariable(int slot) {
+        return stack[slot];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof VmState other && pc == other.pc && sp == other.sp
+                && Arrays.equals(stack, 0, sp, other.stack, 0, sp);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 31 * pc + sp;
+        for (int i = 0; i < sp; i++) hash = 31 * hash + stack[i];
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "pc " + pc + " stack " + Arrays.toString(Arrays.copyOf(stack, sp));
+    }
+}
@@ -1,8 +1,55 @@
 package util.exepeptions;
 
+/**
+ * A syntax error in a robot program, with the position of the token where it was found.
+ */
 @SuppressWarnings("serial")
 public class ParserFailureException extends RuntimeException {
+
+	private final int offset;
+	private final int line, column;
+
 	public ParserFailureException(String msg) {
-		super(msg);
+		this(msg, -1);
+	}
+
+	/**
+	 * @param offset the offset in the source of the token where parsing failed
+	 */
+	public ParserFailureException(String msg, int offset) {
+		this(msg, offset, 0, 0);
+	}
+
+	/**
+	 * @param offset the offset in the source of the token where parsing failed
+	 * @param line   the line of that token, counting from 1
+	 * @param column the column of that token, counting from 1
+	 */
+	public ParserFailureException(String msg, int offset, int line, int column) {
+		super(msg, null, true, false); // an error in the program, not the parser, so no stack trace
+		this.offset = offset;
+		this.line = line;
+		this.column = column;
+	}
+
+	/**
+	 * @return the offset in the source of the token where parsing failed, or -1 if not known
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return the line of the token where parsing failed, counting from 1, or 0 if not known
+	 */
+	public int getLine() {
+		return line;
+	}
+
+	/**
+	 * @return the column of the token where parsing failed, counting from 1, or 0 if not known
+	 */
+	public int getColumn() {
+		return column;
 	}
 }